@@ -0,0 +1,75 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.test;
+
+import org.floens.chan.utils.Logger;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs a benchmark body on the device: a number of warmup iterations that are thrown away, then measured
+ * iterations of which the time per operation is reported. Every iteration runs the body once, the body does
+ * a fixed number of operations so the time can be divided by it.
+ */
+public class Benchmark {
+    private static final String TAG = "Benchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 15;
+    /** Number of times a body runs, warmup included. */
+    public static final int ITERATIONS = WARMUP_ITERATIONS + MEASURED_ITERATIONS;
+
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Run the body and log the result.
+     *
+     * @param name       name of the benchmark, logged
+     * @param operations operations done by one run of the body
+     * @param body       the code to measure
+     * @return the result line that was logged
+     */
+    public static String run(String name, int operations, Body body) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            body.run();
+        }
+
+        long[] times = new long[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            times[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+        double median = times[times.length / 2] / 1000.0 / operations;
+        double min = times[0] / 1000.0 / operations;
+        double max = times[times.length - 1] / 1000.0 / operations;
+
+        String result = String.format(Locale.ENGLISH, "%s: %.2f us/op (min %.2f, max %.2f, %d ops x %d iterations)",
+                name, median, min, max, operations, MEASURED_ITERATIONS);
+        Logger.i(TAG, result);
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.test;
+
+import android.content.Context;
+
+import org.floens.chan.utils.Logger;
+
+// debug version, the benchmarks and their fixtures are only in debug builds
+public class DebugBenchmarks {
+    private static final String TAG = "DebugBenchmarks";
+
+    public static final boolean AVAILABLE = true;
+
+    public static void runHotPathBenchmarks(Context context) {
+        final HotPathBenchmarks benchmarks = new HotPathBenchmarks(context.getApplicationContext());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    benchmarks.run();
+                } catch (Exception e) {
+                    Logger.e(TAG, "Hot path benchmarks failed", e);
+                }
+            }
+        }).start();
+    }
+}
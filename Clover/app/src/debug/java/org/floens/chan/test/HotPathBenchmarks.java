@@ -0,0 +1,317 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.test;
+
+import android.content.Context;
+import android.util.JsonReader;
+
+import com.android.volley.Cache;
+import com.android.volley.toolbox.DiskBasedCache;
+
+import org.floens.chan.chan.ChanParser;
+import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.manager.FilterSet;
+import org.floens.chan.core.manager.FilterType;
+import org.floens.chan.core.model.Filter;
+import org.floens.chan.core.model.Loadable;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.net.ChanReaderRequest;
+import org.floens.chan.core.net.ParseScheduler;
+import org.floens.chan.ui.adapter.PostsFilter;
+import org.floens.chan.ui.theme.Theme;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Benchmarks of the parsing and filtering hot paths, over a thread and catalog of {@link #BOARD} in the 4chan api
+ * format. The fixtures are generated, not recorded, and checked in as debug assets next to this class, so every
+ * device and every run benchmarks the same input. Replace them with recorded json to benchmark real content.<br>
+ * These are on device timings, compare them only between runs on the same device.<br>
+ * Runs on the calling thread, call from a background thread. Results are logged.
+ */
+public class HotPathBenchmarks {
+    private static final String TAG = "HotPathBenchmarks";
+
+    private static final String BOARD = "g";
+    private static final String THREAD_FIXTURE = "benchmark/thread.json";
+    private static final String CATALOG_FIXTURE = "benchmark/catalog.json";
+
+    private static final int[] FILTER_COUNTS = {10, 100, 1000};
+    private static final int DISK_CACHE_ENTRIES = 200;
+
+    private final Context context;
+
+    public HotPathBenchmarks(Context context) {
+        this.context = context;
+    }
+
+    public void run() throws Exception {
+        final String threadJson = readAsset(THREAD_FIXTURE);
+        final String catalogJson = readAsset(CATALOG_FIXTURE);
+        final Loadable threadLoadable = Loadable.forThread(BOARD, findOpNo(threadJson));
+        final Loadable catalogLoadable = Loadable.forCatalog(BOARD);
+
+        final List<Post> threadPosts = readJson(threadLoadable, threadJson);
+        final List<Post> catalogPosts = readJson(catalogLoadable, catalogJson);
+
+        Benchmark.run("readJson thread", 1, new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                readJson(threadLoadable, threadJson);
+            }
+        });
+
+        Benchmark.run("readJson catalog", 1, new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                readJson(catalogLoadable, catalogJson);
+            }
+        });
+
+        final ChanParser parser = ChanParser.getInstance();
+        final Theme theme = ThemeHelper.getInstance().getTheme();
+        // Parsing adds to the linkables and replies of the post, every iteration parses its own copies
+        final List<List<Post>> parseCopies = new ArrayList<>(Benchmark.ITERATIONS);
+        for (int i = 0; i < Benchmark.ITERATIONS; i++) {
+            parseCopies.add(copyForParse(threadPosts));
+        }
+        Benchmark.run("ChanParser.parse", threadPosts.size(), new Benchmark.Body() {
+            private int iteration = 0;
+
+            @Override
+            public void run() throws Exception {
+                List<Post> posts = parseCopies.get(iteration++);
+                for (int i = 0; i < posts.size(); i++) {
+                    parser.parse(theme, posts.get(i));
+                }
+            }
+        });
+
+        for (int count : FILTER_COUNTS) {
+            benchmarkFilters(threadPosts, count);
+        }
+
+        String query = findWord(catalogPosts);
+        for (PostsFilter.Order order : PostsFilter.Order.values()) {
+            final PostsFilter postsFilter = new PostsFilter(order, null);
+            Benchmark.run("PostsFilter.apply order " + order.name, 1, new Benchmark.Body() {
+                @Override
+                public void run() throws Exception {
+                    postsFilter.apply(catalogPosts);
+                }
+            });
+        }
+        final PostsFilter search = new PostsFilter(PostsFilter.Order.BUMP, query);
+        Benchmark.run("PostsFilter.apply search \"" + query + "\"", 1, new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                search.apply(catalogPosts);
+            }
+        });
+
+        benchmarkDiskBasedCache();
+    }
+
+    private void benchmarkFilters(final List<Post> posts, int count) throws Exception {
+        final FilterEngine filterEngine = FilterEngine.getInstance();
+        final List<Filter> filters = createFilters(posts, count);
+        final FilterSet filterSet = filterEngine.createFilterSet(filters);
+        final boolean[] enabled = filterSet.getEnabledForBoard(BOARD);
+
+        Benchmark.run("FilterSet.apply " + count + " filters", posts.size(), new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < posts.size(); i++) {
+                    filterSet.apply(posts.get(i), enabled);
+                }
+            }
+        });
+
+        // Every filter against every post, like the filters were applied before the filter set
+        Benchmark.run("FilterEngine.matches " + count + " filters", posts.size(), new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < posts.size(); i++) {
+                    Post post = posts.get(i);
+                    for (int j = 0; j < filters.size(); j++) {
+                        Filter filter = filters.get(j);
+                        if (filter.hasFilter(FilterType.COMMENT)) {
+                            filterEngine.matches(filter, true, post.rawComment, false);
+                        }
+                        if (filter.hasFilter(FilterType.NAME)) {
+                            filterEngine.matches(filter, false, post.name, false);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void benchmarkDiskBasedCache() throws Exception {
+        final File dir = new File(context.getCacheDir(), "benchmark-volley");
+        DiskBasedCache cache = new DiskBasedCache(dir);
+        cache.initialize();
+        cache.clear();
+
+        Random random = new Random(DISK_CACHE_ENTRIES);
+        for (int i = 0; i < DISK_CACHE_ENTRIES; i++) {
+            Cache.Entry entry = new Cache.Entry();
+            entry.data = new byte[2048];
+            random.nextBytes(entry.data);
+            entry.etag = "\"" + Integer.toHexString(random.nextInt()) + "\"";
+            entry.serverDate = System.currentTimeMillis();
+            entry.ttl = entry.softTtl = entry.serverDate + 60000;
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "application/json");
+            headers.put("Last-Modified", "Sat, 01 Oct 2016 12:00:00 GMT");
+            headers.put("ETag", entry.etag);
+            entry.responseHeaders = headers;
+            cache.put("https://a.4cdn.org/" + BOARD + "/thread/" + i + ".json", entry);
+        }
+
+        Benchmark.run("DiskBasedCache.initialize", DISK_CACHE_ENTRIES, new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                new DiskBasedCache(dir).initialize();
+            }
+        });
+
+        cache.clear();
+    }
+
+    // The fields the parser reads, name and subject were already unescaped once
+    private List<Post> copyForParse(List<Post> posts) {
+        List<Post> copies = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            Post copy = new Post();
+            copy.board = post.board;
+            copy.no = post.no;
+            copy.resto = post.resto;
+            copy.isOP = post.isOP;
+            copy.name = post.name;
+            copy.subject = post.subject;
+            copy.tripcode = post.tripcode;
+            copy.id = post.id;
+            copy.capcode = post.capcode;
+            copy.rawComment = post.rawComment;
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private List<Post> readJson(Loadable loadable, String json) throws Exception {
+        ChanReaderRequest request = ChanReaderRequest.newInstance(loadable, null, ParseScheduler.Lane.BACKGROUND, null, null);
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            return request.readJson(reader).posts;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    // Word filters with some regex and name filters, from the words in the posts so that some of them match
+    private List<Filter> createFilters(List<Post> posts, int count) {
+        List<String> words = new ArrayList<>(findWords(posts));
+        Collections.sort(words);
+        Random random = new Random(count);
+
+        List<Filter> filters = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Filter filter = new Filter();
+            filter.action = FilterEngine.FilterAction.HIDE.id;
+            String word = words.isEmpty() ? "word" + i : words.get(random.nextInt(words.size()));
+            switch (i % 10) {
+                case 0:
+                    filter.type = FilterType.COMMENT.flag | FilterType.SUBJECT.flag;
+                    filter.pattern = "/" + word + "\\d+/i";
+                    break;
+                case 1:
+                    filter.type = FilterType.NAME.flag;
+                    filter.pattern = word;
+                    break;
+                default:
+                    filter.type = FilterType.COMMENT.flag | FilterType.SUBJECT.flag;
+                    filter.pattern = word + i;
+                    break;
+            }
+            filters.add(filter);
+        }
+        return filters;
+    }
+
+    private String findWord(List<Post> posts) {
+        Set<String> words = findWords(posts);
+        return words.isEmpty() ? "the" : words.iterator().next();
+    }
+
+    private Set<String> findWords(List<Post> posts) {
+        Set<String> words = new LinkedHashSet<>();
+        for (int i = 0; i < posts.size(); i++) {
+            for (String word : posts.get(i).comment.toString().split("[^a-zA-Z]+")) {
+                if (word.length() >= 5) {
+                    words.add(word.toLowerCase(Locale.ENGLISH));
+                }
+            }
+        }
+        return words;
+    }
+
+    private int findOpNo(String threadJson) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(threadJson));
+        try {
+            reader.beginObject();
+            reader.nextName();
+            reader.beginArray();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("no")) {
+                    return reader.nextInt();
+                }
+                reader.skipValue();
+            }
+            throw new IOException("No op in the thread fixture");
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private String readAsset(String name) throws IOException {
+        InputStream is = context.getAssets().open(name);
+        try {
+            return IOUtils.readString(is);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+}
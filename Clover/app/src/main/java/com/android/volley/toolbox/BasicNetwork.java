@@ -40,8 +40,10 @@ import org.apache.http.StatusLine;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.cookie.DateUtils;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.util.Collections;
@@ -117,7 +119,11 @@ public class BasicNetwork implements Network {
                 }
 
                 // Some responses such as 204s do not have content.  We must check.
-                if (httpResponse.getEntity() != null) {
+                if (request instanceof StreamingRequest && httpResponse.getEntity() != null &&
+                        statusCode >= 200 && statusCode <= 299) {
+                    responseContents = streamEntity((StreamingRequest) request,
+                            httpResponse.getEntity(), request.shouldCache());
+                } else if (httpResponse.getEntity() != null) {
                   responseContents = entityToBytes(httpResponse.getEntity());
                 } else {
                   // Add 0 byte response as a way of honestly representing a
@@ -250,6 +256,96 @@ public class BasicNetwork implements Network {
         }
     }
 
+    /**
+     * Hands the contents of the HttpEntity to the streaming request while they are received.
+     * @param copy Also copy the contents into a byte[], for the cache
+     * @return the copied contents, or an empty array when not copied
+     */
+    private byte[] streamEntity(StreamingRequest request, HttpEntity entity, boolean copy)
+            throws IOException, ServerError {
+        PoolingByteArrayOutputStream bytes = copy
+                ? new PoolingByteArrayOutputStream(mPool, (int) entity.getContentLength())
+                : null;
+        byte[] buffer = null;
+        try {
+            InputStream in = entity.getContent();
+            if (in == null) {
+                throw new ServerError();
+            }
+            TeeInputStream tee = new TeeInputStream(in, bytes);
+            request.onStream(tee);
+
+            if (bytes == null) {
+                return new byte[0];
+            }
+
+            // Copy what the request did not read, the cache needs the complete contents
+            buffer = mPool.getBuf(1024);
+            while (tee.read(buffer) != -1) {
+                // Copied by the tee
+            }
+            return bytes.toByteArray();
+        } finally {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+            mPool.returnBuf(buffer);
+            if (bytes != null) {
+                bytes.close();
+            }
+        }
+    }
+
+    /**
+     * Copies everything that is read to an output stream, if there is one.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && copy != null) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0 && copy != null) {
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the copy
+            byte[] skipBuffer = new byte[(int) Math.min(n, 1024)];
+            int read = read(skipBuffer, 0, skipBuffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // Closed by consuming the entity
+        }
+    }
+
     /**
      * Converts Headers[] to Map<String, String>.
      */
@@ -33,17 +33,29 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Cache implementation that caches files directly onto the hard disk in the specified
  * directory. The default disk usage size is 5MB, but is configurable.
+ *
+ * <p>The keys, sizes and expiry of the entries are kept in an index in memory, persisted in a
+ * journal file in the same directory. Initializing reads the journal in one sequential read,
+ * the headers of the files are only read when the directory is indexed for the first time.
+ * The response headers are not kept in memory, they are read from the file with the data.</p>
+ *
+ * <p>The lock is only held for the index, never while reading or writing entry data, so a slow
+ * read does not block other lookups. Entries are written to a temporary file and renamed, a
+ * read of the same key sees either the old or the new file.</p>
  */
 public class DiskBasedCache implements Cache {
 
-    /** Map of the Key, CacheHeader pairs */
+    /** Map of the Key, CacheHeader pairs, guarded by this */
     private final Map<String, CacheHeader> mEntries =
             new LinkedHashMap<String, CacheHeader>(16, .75f, true);
 
@@ -56,6 +68,19 @@ public class DiskBasedCache implements Cache {
     /** The maximum size of the cache in bytes. */
     private final int mMaxCacheSizeInBytes;
 
+    /** The journal of the index, and the file a compacted journal is written to. */
+    private final File mJournalFile;
+    private final File mJournalFileTmp;
+
+    /** Stream that operations are appended to, opened on the first append. */
+    private OutputStream mJournalWriter;
+
+    /** Number of journal records that are no longer needed. */
+    private int mRedundantOps = 0;
+
+    /** Counter for unique temporary file names. */
+    private final AtomicInteger mTempCounter = new AtomicInteger();
+
     /** Default maximum disk usage in bytes. */
     private static final int DEFAULT_DISK_USAGE_BYTES = 5 * 1024 * 1024;
 
@@ -67,6 +92,23 @@ public class DiskBasedCache implements Cache {
 
     private static final int DEFAULT_DISK_FILES_MAX = 250;
 
+    /** Magic number for current version of the journal format. */
+    private static final int JOURNAL_MAGIC = 0x20161101;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int OP_PUT = 1;
+    private static final int OP_REMOVE = 2;
+
+    private static final int JOURNAL_VALID = 0;
+    private static final int JOURNAL_TRUNCATED = 1;
+    private static final int JOURNAL_INVALID = 2;
+
+    /** Compact the journal when it has this many records more than needed. */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2 * DEFAULT_DISK_FILES_MAX;
+
     /**
      * Constructs an instance of the DiskBasedCache at the specified directory.
      * @param rootDirectory The root directory of the cache.
@@ -75,6 +117,8 @@ public class DiskBasedCache implements Cache {
     public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
         mRootDirectory = rootDirectory;
         mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+        mJournalFile = new File(rootDirectory, JOURNAL_FILE);
+        mJournalFileTmp = new File(rootDirectory, JOURNAL_FILE_TMP);
     }
 
     /**
@@ -91,6 +135,7 @@ public class DiskBasedCache implements Cache {
      */
     @Override
     public synchronized void clear() {
+        closeJournal();
         File[] files = mRootDirectory.listFiles();
         if (files != null) {
             for (File file : files) {
@@ -99,6 +144,7 @@ public class DiskBasedCache implements Cache {
         }
         mEntries.clear();
         mTotalSize = 0;
+        mRedundantOps = 0;
         VolleyLog.d("Cache cleared.");
     }
 
@@ -106,20 +152,25 @@ public class DiskBasedCache implements Cache {
      * Returns the cache entry with the specified key if it exists, null otherwise.
      */
     @Override
-    public synchronized Entry get(String key) {
-        CacheHeader entry = mEntries.get(key);
-        // if the entry does not exist, return.
-        if (entry == null) {
-            return null;
+    public Entry get(String key) {
+        synchronized (this) {
+            // if the entry does not exist, return.
+            if (mEntries.get(key) == null) {
+                return null;
+            }
         }
 
         File file = getFileForKey(key);
         CountingInputStream cis = null;
         try {
             cis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
-            CacheHeader.readHeader(cis); // eat header
+            CacheHeader header = CacheHeader.readHeader(cis);
+            if (!key.equals(header.key)) {
+                // Another key with the same file name replaced it
+                throw new IOException("Key mismatch");
+            }
             byte[] data = streamToBytes(cis, (int) (file.length() - cis.bytesRead));
-            return entry.toCacheEntry(data);
+            return header.toCacheEntry(data);
         } catch (IOException e) {
             VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
             remove(key);
@@ -136,8 +187,9 @@ public class DiskBasedCache implements Cache {
     }
 
     /**
-     * Initializes the DiskBasedCache by scanning for all files currently in the
-     * specified root directory. Creates the root directory if necessary.
+     * Initializes the DiskBasedCache by reading the journal of the index. The headers of the
+     * files are only read when there is no valid journal, otherwise the files that are not in the
+     * index are deleted. Creates the root directory if necessary.
      */
     @Override
     public synchronized void initialize() {
@@ -148,16 +200,98 @@ public class DiskBasedCache implements Cache {
             return;
         }
 
+        int journal = readJournal();
+        if (journal == JOURNAL_INVALID) {
+            mEntries.clear();
+            mTotalSize = 0;
+            scanDirectory();
+            writeCompactedJournal();
+        } else {
+            if (journal == JOURNAL_TRUNCATED) {
+                // Appending after the partial record would make the next read go out of sync
+                writeCompactedJournal();
+            }
+            sweepDirectory();
+        }
+    }
+
+    /**
+     * Reads the journal into the index.
+     * @return JOURNAL_TRUNCATED if the last record was not written completely,
+     * JOURNAL_INVALID if there is no journal or it is invalid
+     */
+    private int readJournal() {
+        if (!mJournalFile.exists()) {
+            return JOURNAL_INVALID;
+        }
+
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(mJournalFile));
+            if (readInt(is) != JOURNAL_MAGIC) {
+                return JOURNAL_INVALID;
+            }
+
+            int state = JOURNAL_VALID;
+            int records = 0;
+            try {
+                while (true) {
+                    int op = is.read();
+                    if (op == -1) {
+                        break;
+                    } else if (op == OP_PUT) {
+                        CacheHeader entry = CacheHeader.readIndex(is);
+                        putEntry(entry.key, entry);
+                    } else if (op == OP_REMOVE) {
+                        removeEntry(readString(is));
+                    } else {
+                        throw new IOException("Unknown journal op " + op);
+                    }
+                    records++;
+                }
+            } catch (EOFException e) {
+                // The last record was not written completely, the ones before it are valid
+                VolleyLog.d("Truncated journal record");
+                state = JOURNAL_TRUNCATED;
+            }
+            mRedundantOps = records - mEntries.size();
+            return state;
+        } catch (IOException e) {
+            VolleyLog.d("Invalid journal: %s", e.toString());
+            return JOURNAL_INVALID;
+        } finally {
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * Builds the index by reading the header of every file in the root directory.
+     */
+    private void scanDirectory() {
         File[] files = mRootDirectory.listFiles();
         if (files == null) {
             return;
         }
         for (File file : files) {
+            String name = file.getName();
+            if (name.equals(JOURNAL_FILE)) {
+                continue;
+            }
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+
             BufferedInputStream fis = null;
             try {
                 fis = new BufferedInputStream(new FileInputStream(file));
                 CacheHeader entry = CacheHeader.readHeader(fis);
                 entry.size = file.length();
+                entry.responseHeaders = null;
                 putEntry(entry.key, entry);
             } catch (IOException e) {
                 if (file != null) {
@@ -173,13 +307,36 @@ public class DiskBasedCache implements Cache {
         }
     }
 
+    /**
+     * Deletes the temporary files left by writes that did not finish, and the files that were
+     * written without their journal record.
+     */
+    private void sweepDirectory() {
+        File[] files = mRootDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> names = new HashSet<String>(mEntries.size());
+        for (String key : mEntries.keySet()) {
+            names.add(getFilenameForKey(key));
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.equals(JOURNAL_FILE) && !names.contains(name)) {
+                if (!file.delete()) {
+                    VolleyLog.d("Could not delete orphaned file %s", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
     /**
      * Invalidates an entry in the cache.
      * @param key Cache key
      * @param fullExpire True to fully expire the entry, false to soft expire
      */
     @Override
-    public synchronized void invalidate(String key, boolean fullExpire) {
+    public void invalidate(String key, boolean fullExpire) {
         Entry entry = get(key);
         if (entry != null) {
             entry.softTtl = 0;
@@ -195,27 +352,42 @@ public class DiskBasedCache implements Cache {
      * Puts the entry with the specified key into the cache.
      */
     @Override
-    public synchronized void put(String key, Entry entry) {
-        pruneIfNeeded(entry.data.length);
+    public void put(String key, Entry entry) {
         File file = getFileForKey(key);
+        File tmp = new File(mRootDirectory,
+                file.getName() + "." + mTempCounter.incrementAndGet() + TEMP_SUFFIX);
         try {
-            BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(file));
+            BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(tmp));
             CacheHeader e = new CacheHeader(key, entry);
             boolean success = e.writeHeader(fos);
             if (!success) {
                 fos.close();
-                VolleyLog.d("Failed to write header for %s", file.getAbsolutePath());
+                VolleyLog.d("Failed to write header for %s", tmp.getAbsolutePath());
                 throw new IOException();
             }
             fos.write(entry.data);
             fos.close();
-            putEntry(key, e);
+            // Read from the file on get
+            e.responseHeaders = null;
+
+            synchronized (this) {
+                pruneIfNeeded(entry.data.length);
+                if (!tmp.renameTo(file)) {
+                    VolleyLog.d("Failed to rename %s", tmp.getAbsolutePath());
+                    throw new IOException();
+                }
+                if (mEntries.containsKey(key)) {
+                    mRedundantOps++;
+                }
+                putEntry(key, e);
+                appendJournal(OP_PUT, e);
+            }
             return;
         } catch (IOException e) {
         }
-        boolean deleted = file.delete();
+        boolean deleted = tmp.delete();
         if (!deleted) {
-            VolleyLog.d("Could not clean up file %s", file.getAbsolutePath());
+            VolleyLog.d("Could not clean up file %s", tmp.getAbsolutePath());
         }
     }
 
@@ -225,7 +397,10 @@ public class DiskBasedCache implements Cache {
     @Override
     public synchronized void remove(String key) {
         boolean deleted = getFileForKey(key).delete();
-        removeEntry(key);
+        if (mEntries.containsKey(key)) {
+            removeEntry(key);
+            appendJournal(OP_REMOVE, key);
+        }
         if (!deleted) {
             VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
                     key, getFilenameForKey(key));
@@ -279,6 +454,7 @@ public class DiskBasedCache implements Cache {
                        e.key, getFilenameForKey(e.key));
             }
             iterator.remove();
+            appendJournal(OP_REMOVE, e.key);
             prunedFiles++;
 
             if (mEntries.size() < DEFAULT_DISK_FILES_MAX * HYSTERESIS_FACTOR && (mTotalSize + neededSpace) < mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
@@ -318,10 +494,97 @@ public class DiskBasedCache implements Cache {
         }
     }
 
+    /**
+     * Appends an operation to the journal, and compacts the journal when it has too many
+     * redundant records.
+     * @param record The CacheHeader for a put, the key for a remove.
+     */
+    private void appendJournal(int op, Object record) {
+        if (op == OP_REMOVE) {
+            // The remove and the put it undoes
+            mRedundantOps += 2;
+        }
+
+        if (mRedundantOps > REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOps > mEntries.size()) {
+            writeCompactedJournal();
+            return;
+        }
+
+        try {
+            if (mJournalWriter == null) {
+                boolean exists = mJournalFile.exists();
+                mJournalWriter = new BufferedOutputStream(new FileOutputStream(mJournalFile, true));
+                if (!exists) {
+                    writeInt(mJournalWriter, JOURNAL_MAGIC);
+                }
+            }
+
+            mJournalWriter.write(op);
+            if (op == OP_PUT) {
+                ((CacheHeader) record).writeIndex(mJournalWriter);
+            } else {
+                writeString(mJournalWriter, (String) record);
+            }
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            VolleyLog.d("Failed to append to the journal: %s", e.toString());
+            closeJournal();
+        }
+    }
+
+    /**
+     * Replaces the journal with one that only has a put for every entry in the index, in least
+     * recently used order.
+     */
+    private void writeCompactedJournal() {
+        closeJournal();
+
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(mJournalFileTmp));
+            writeInt(os, JOURNAL_MAGIC);
+            for (CacheHeader entry : mEntries.values()) {
+                os.write(OP_PUT);
+                entry.writeIndex(os);
+            }
+            os.close();
+            os = null;
+
+            if (!mJournalFileTmp.renameTo(mJournalFile)) {
+                throw new IOException("Rename failed");
+            }
+            mRedundantOps = 0;
+        } catch (IOException e) {
+            VolleyLog.d("Failed to write the journal: %s", e.toString());
+            mJournalFile.delete();
+        } finally {
+            try {
+                if (os != null) {
+                    os.close();
+                }
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private void closeJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException ignored) { }
+            mJournalWriter = null;
+        }
+    }
+
     /**
      * Reads the contents of an InputStream into a byte[].
      * */
     private static byte[] streamToBytes(InputStream in, int length) throws IOException {
+        // A length read from a damaged file can be anything, don't allocate more than is left
+        if (length < 0) {
+            throw new IOException("Invalid length " + length);
+        } else if (length > in.available()) {
+            throw new EOFException("Expected " + length + " bytes, " + in.available() + " left");
+        }
         byte[] bytes = new byte[length];
         int count;
         int pos = 0;
@@ -329,7 +592,7 @@ public class DiskBasedCache implements Cache {
             pos += count;
         }
         if (pos != length) {
-            throw new IOException("Expected " + length + " bytes, read " + pos + " bytes");
+            throw new EOFException("Expected " + length + " bytes, read " + pos + " bytes");
         }
         return bytes;
     }
@@ -340,7 +603,7 @@ public class DiskBasedCache implements Cache {
     // Visible for testing.
     static class CacheHeader {
         /** The size of the data identified by this CacheHeader. (This is not
-         * serialized to disk. */
+         * serialized to the file, only to the journal.) */
         public long size;
 
         /** The key that identifies the cache entry. */
@@ -358,7 +621,7 @@ public class DiskBasedCache implements Cache {
         /** Soft TTL for this record. */
         public long softTtl;
 
-        /** Headers from the response resulting in this cache entry. */
+        /** Headers from the response resulting in this cache entry, null for entries in the index. */
         public Map<String, String> responseHeaders;
 
         private CacheHeader() { }
@@ -437,6 +700,34 @@ public class DiskBasedCache implements Cache {
             }
         }
 
+        /**
+         * Reads an entry of the index off of the journal, without the response headers.
+         */
+        public static CacheHeader readIndex(InputStream is) throws IOException {
+            CacheHeader entry = new CacheHeader();
+            entry.key = readString(is);
+            entry.size = readLong(is);
+            entry.etag = readString(is);
+            if (entry.etag.equals("")) {
+                entry.etag = null;
+            }
+            entry.serverDate = readLong(is);
+            entry.ttl = readLong(is);
+            entry.softTtl = readLong(is);
+            return entry;
+        }
+
+        /**
+         * Writes the index fields of this CacheHeader to the journal.
+         */
+        public void writeIndex(OutputStream os) throws IOException {
+            writeString(os, key);
+            writeLong(os, size);
+            writeString(os, etag == null ? "" : etag);
+            writeLong(os, serverDate);
+            writeLong(os, ttl);
+            writeLong(os, softTtl);
+        }
     }
 
     private static class CountingInputStream extends FilterInputStream {
@@ -550,6 +841,9 @@ public class DiskBasedCache implements Cache {
 
     static Map<String, String> readStringStringMap(InputStream is) throws IOException {
         int size = readInt(is);
+        if (size < 0) {
+            throw new IOException("Invalid map size " + size);
+        }
         Map<String, String> result = (size == 0)
                 ? Collections.<String, String>emptyMap()
                 : new HashMap<String, String>(size);
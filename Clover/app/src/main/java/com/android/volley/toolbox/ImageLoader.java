@@ -21,14 +21,17 @@ import android.os.Handler;
 import android.os.Looper;
 import android.widget.ImageView;
 
+import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response.ErrorListener;
 import com.android.volley.Response.Listener;
 import com.android.volley.VolleyError;
+import com.android.volley.VolleyLog;
 
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.Executor;
 
 /**
  * Helper that handles loading and caching images from remote URLs.
@@ -49,6 +52,12 @@ public class ImageLoader {
     /** The cache implementation to be used as an L1 cache before calling into volley. */
     private final ImageCache mCache;
 
+    /** Bitmaps to decode into, or null to always allocate new bitmaps. */
+    private BitmapPool mBitmapPool;
+
+    /** Executor to decode on, or null to decode on the network dispatchers. */
+    private Executor mDecodeExecutor;
+
     /**
      * HashMap of Cache keys -> BatchedImageRequest used to track in-flight requests so
      * that we can coalesce multiple requests to the same URL into a single network request.
@@ -76,6 +85,28 @@ public class ImageLoader {
         public void putBitmap(String url, Bitmap bitmap);
     }
 
+    /**
+     * Pool of bitmaps that are no longer used, to decode new images into with
+     * {@link android.graphics.BitmapFactory.Options#inBitmap}. Implementations must be threadsafe.
+     */
+    public interface BitmapPool {
+        /**
+         * Take a bitmap out of the pool that can hold an image of the given size and config.
+         * @return a mutable bitmap, or null if there is none.
+         */
+        public Bitmap get(int width, int height, Config config);
+
+        /**
+         * Give a bitmap that is no longer used to the pool.
+         */
+        public void put(Bitmap bitmap);
+
+        /**
+         * Called when decoding into a bitmap from {@link #get} failed, the bitmap is not put back.
+         */
+        public void onReuseFailed(Bitmap bitmap);
+    }
+
     /**
      * Constructs a new ImageLoader.
      * @param queue The RequestQueue to use for making image requests.
@@ -86,6 +117,25 @@ public class ImageLoader {
         mCache = imageCache;
     }
 
+    /**
+     * Sets the pool that image requests decode into.
+     * @param bitmapPool The pool, or null to always allocate new bitmaps.
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * Sets the executor that images are decoded on. The network dispatchers then only fetch the
+     * data, and images are decoded concurrently on the executor instead of one at a time under
+     * the global decode lock of {@link ImageRequest}. The executor limits the number of
+     * concurrent decodes.
+     * @param decodeExecutor The executor, or null to decode on the network dispatchers.
+     */
+    public void setDecodeExecutor(Executor decodeExecutor) {
+        mDecodeExecutor = decodeExecutor;
+    }
+
     /**
      * The default implementation of ImageListener which handles basic functionality
      * of showing a default image until the network response is received, at which point
@@ -215,7 +265,9 @@ public class ImageLoader {
 
         // The request is not already in flight. Send the new request to the network and
         // track it.
-        Request<Bitmap> newRequest = makeImageRequest(requestUrl, maxWidth, maxHeight, cacheKey);
+        Request<?> newRequest = mDecodeExecutor != null
+                ? makeImageDataRequest(requestUrl, maxWidth, maxHeight, cacheKey)
+                : makeImageRequest(requestUrl, maxWidth, maxHeight, cacheKey);
 
         mRequestQueue.add(newRequest);
         mInFlightRequests.put(cacheKey,
@@ -235,6 +287,67 @@ public class ImageLoader {
             public void onErrorResponse(VolleyError error) {
                 onGetImageError(cacheKey, error);
             }
+        }, mBitmapPool);
+    }
+
+    protected Request<byte[]> makeImageDataRequest(String requestUrl, final int maxWidth,
+            final int maxHeight, final String cacheKey) {
+        return new ImageDataRequest(requestUrl, new Listener<byte[]>() {
+            @Override
+            public void onResponse(byte[] response) {
+                BatchedImageRequest request = mInFlightRequests.get(cacheKey);
+                if (request != null) {
+                    decode(request.mRequest, response, maxWidth, maxHeight, cacheKey);
+                }
+            }
+        }, new ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                onGetImageError(cacheKey, error);
+            }
+        });
+    }
+
+    /**
+     * Decode the data on the decode executor and deliver the bitmap on the main thread.
+     * Nothing is decoded or delivered when the request was cancelled in the meantime.
+     */
+    private void decode(final Request<?> request, final byte[] data, final int maxWidth,
+            final int maxHeight, final String cacheKey) {
+        mDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCanceled()) {
+                    return;
+                }
+
+                Bitmap bitmap = null;
+                VolleyError error = null;
+                try {
+                    bitmap = ImageRequest.decode(data, maxWidth, maxHeight, Config.RGB_565,
+                            mBitmapPool);
+                    if (bitmap == null) {
+                        error = new ParseError();
+                    }
+                } catch (OutOfMemoryError e) {
+                    VolleyLog.e("Caught OOM for %d byte image, url=%s", data.length,
+                            request.getUrl());
+                    error = new ParseError(e);
+                }
+
+                final Bitmap result = bitmap;
+                final VolleyError resultError = error;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (resultError != null) {
+                            onGetImageError(cacheKey, resultError);
+                        } else {
+                            onGetImageSuccess(cacheKey, result);
+                        }
+                    }
+                });
+            }
         });
     }
 
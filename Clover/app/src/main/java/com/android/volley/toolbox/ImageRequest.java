@@ -45,6 +45,7 @@ public class ImageRequest extends Request<Bitmap> {
     private final Config mDecodeConfig;
     private final int mMaxWidth;
     private final int mMaxHeight;
+    private final ImageLoader.BitmapPool mBitmapPool;
 
     /** Decoding lock so that we don't decode more than one image at a time (to avoid OOM's) */
     private static final Object sDecodeLock = new Object();
@@ -68,6 +69,18 @@ public class ImageRequest extends Request<Bitmap> {
      */
     public ImageRequest(String url, Response.Listener<Bitmap> listener, int maxWidth, int maxHeight,
             Config decodeConfig, Response.ErrorListener errorListener) {
+        this(url, listener, maxWidth, maxHeight, decodeConfig, errorListener, null);
+    }
+
+    /**
+     * Creates a new image request that decodes resized images into bitmaps from the pool
+     * when possible.
+     *
+     * @param bitmapPool Pool to take bitmaps from to decode into, or null
+     */
+    public ImageRequest(String url, Response.Listener<Bitmap> listener, int maxWidth, int maxHeight,
+            Config decodeConfig, Response.ErrorListener errorListener,
+            ImageLoader.BitmapPool bitmapPool) {
         super(Method.GET, url, errorListener);
         setRetryPolicy(
                 new DefaultRetryPolicy(IMAGE_TIMEOUT_MS, IMAGE_MAX_RETRIES, IMAGE_BACKOFF_MULT));
@@ -75,6 +88,7 @@ public class ImageRequest extends Request<Bitmap> {
         mDecodeConfig = decodeConfig;
         mMaxWidth = maxWidth;
         mMaxHeight = maxHeight;
+        mBitmapPool = bitmapPool;
     }
 
     @Override
@@ -135,11 +149,27 @@ public class ImageRequest extends Request<Bitmap> {
      * The real guts of parseNetworkResponse. Broken out for readability.
      */
     private Response<Bitmap> doParse(NetworkResponse response) {
-        byte[] data = response.data;
+        Bitmap bitmap = decode(response.data, mMaxWidth, mMaxHeight, mDecodeConfig, mBitmapPool);
+        if (bitmap == null) {
+            return Response.error(new ParseError(response));
+        } else {
+            return Response.success(bitmap, HttpHeaderParser.parseCacheHeaders(response));
+        }
+    }
+
+    /**
+     * Decode the image data to a maximum width and height, like an image request. Does not take
+     * the global decode lock, callers are responsible for limiting the number of concurrent decodes.
+     *
+     * @param bitmapPool Pool to take bitmaps from to decode into, or null
+     * @return the bitmap, or null if the data could not be decoded
+     */
+    public static Bitmap decode(byte[] data, int maxWidth, int maxHeight, Config decodeConfig,
+            ImageLoader.BitmapPool bitmapPool) {
         BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
         Bitmap bitmap = null;
-        if (mMaxWidth == 0 && mMaxHeight == 0) {
-            decodeOptions.inPreferredConfig = mDecodeConfig;
+        if (maxWidth == 0 && maxHeight == 0) {
+            decodeOptions.inPreferredConfig = decodeConfig;
             bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
         } else {
             // If we have to resize this image, first get the natural bounds.
@@ -149,9 +179,9 @@ public class ImageRequest extends Request<Bitmap> {
             int actualHeight = decodeOptions.outHeight;
 
             // Then compute the dimensions we would ideally like to decode to.
-            int desiredWidth = getResizedDimension(mMaxWidth, mMaxHeight,
+            int desiredWidth = getResizedDimension(maxWidth, maxHeight,
                     actualWidth, actualHeight);
-            int desiredHeight = getResizedDimension(mMaxHeight, mMaxWidth,
+            int desiredHeight = getResizedDimension(maxHeight, maxWidth,
                     actualHeight, actualWidth);
 
             // Decode to the nearest power of two scaling factor.
@@ -160,25 +190,53 @@ public class ImageRequest extends Request<Bitmap> {
             // decodeOptions.inPreferQualityOverSpeed = PREFER_QUALITY_OVER_SPEED;
             decodeOptions.inSampleSize =
                 findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-            Bitmap tempBitmap =
-                BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            Bitmap tempBitmap = decodeWithPool(data, decodeOptions, actualWidth, actualHeight,
+                    bitmapPool);
 
             // If necessary, scale down to the maximal acceptable size.
             if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth ||
                     tempBitmap.getHeight() > desiredHeight)) {
                 bitmap = Bitmap.createScaledBitmap(tempBitmap,
                         desiredWidth, desiredHeight, true);
-                tempBitmap.recycle();
+                if (bitmapPool != null) {
+                    bitmapPool.put(tempBitmap);
+                } else {
+                    tempBitmap.recycle();
+                }
             } else {
                 bitmap = tempBitmap;
             }
         }
+        return bitmap;
+    }
 
-        if (bitmap == null) {
-            return Response.error(new ParseError(response));
-        } else {
-            return Response.success(bitmap, HttpHeaderParser.parseCacheHeaders(response));
+    /**
+     * Decode into a bitmap from the pool when there is one that fits, otherwise into a new
+     * bitmap. The decoded bitmaps are mutable so that they can be pooled later on.
+     */
+    private static Bitmap decodeWithPool(byte[] data, BitmapFactory.Options decodeOptions,
+            int actualWidth, int actualHeight, ImageLoader.BitmapPool bitmapPool) {
+        if (bitmapPool == null) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+        }
+
+        // Rounded up, depending on the format the decoder rounds up or down.
+        int sampleSize = Math.max(1, decodeOptions.inSampleSize);
+        int width = (actualWidth + sampleSize - 1) / sampleSize;
+        int height = (actualHeight + sampleSize - 1) / sampleSize;
+
+        decodeOptions.inMutable = true;
+        decodeOptions.inBitmap = bitmapPool.get(width, height, decodeOptions.inPreferredConfig);
+        if (decodeOptions.inBitmap != null) {
+            try {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            } catch (IllegalArgumentException e) {
+                // The image has a different config than expected, decode without reuse.
+                bitmapPool.onReuseFailed(decodeOptions.inBitmap);
+                decodeOptions.inBitmap = null;
+            }
         }
+        return BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
     }
 
     @Override
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A request that reads the body of a successful response while it is being received, instead of
+ * after it was buffered completely. {@link BasicNetwork} hands the body stream to
+ * {@link #onStream} on the network dispatcher thread, before
+ * {@link com.android.volley.Request#parseNetworkResponse} is called. The request keeps the result
+ * of the stream to return it from parseNetworkResponse.
+ *
+ * <p>The data of the network response only holds a copy of the body when the request should be
+ * cached, otherwise it is empty. Responses from the cache are not streamed.</p>
+ */
+public interface StreamingRequest {
+    /**
+     * Read the body. The rest of the body that is not read is skipped, the stream is closed
+     * afterwards.
+     *
+     * @param in the body of the response
+     * @throws IOException when reading from the network failed, the request then fails with a
+     *         network error, or is retried on a timeout
+     */
+    public void onStream(InputStream in) throws IOException;
+}
@@ -33,7 +33,10 @@ import org.floens.chan.core.http.ReplyManager;
 import org.floens.chan.core.manager.BoardManager;
 import org.floens.chan.core.manager.WatchManager;
 import org.floens.chan.core.net.BitmapLruImageCache;
-import org.floens.chan.core.net.ProxiedHurlStack;
+import org.floens.chan.core.net.BucketedBitmapPool;
+import org.floens.chan.core.net.ImageDecodeExecutor;
+import org.floens.chan.core.net.OkHttpStack;
+import org.floens.chan.core.net.SharedHttpClient;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
@@ -55,11 +58,15 @@ public class Chan extends Application {
     private static Chan instance;
     private static RequestQueue volleyRequestQueue;
     private static ImageLoader imageLoader;
+    private static BitmapLruImageCache imageCache;
+    private static BucketedBitmapPool bitmapPool;
+    private static ImageDecodeExecutor imageDecodeExecutor;
     private static BoardManager boardManager;
     private static WatchManager watchManager;
     private static ReplyManager replyManager;
     private static DatabaseManager databaseManager;
     private static FileCache fileCache;
+    private static SharedHttpClient httpClient;
 
     private String userAgent;
     private int activityForegroundCounter = 0;
@@ -81,6 +88,18 @@ public class Chan extends Application {
         return imageLoader;
     }
 
+    public static BitmapLruImageCache getImageCache() {
+        return imageCache;
+    }
+
+    public static BucketedBitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    public static ImageDecodeExecutor getImageDecodeExecutor() {
+        return imageDecodeExecutor;
+    }
+
     public static BoardManager getBoardManager() {
         return boardManager;
     }
@@ -101,6 +120,10 @@ public class Chan extends Application {
         return fileCache;
     }
 
+    public static SharedHttpClient getHttpClient() {
+        return httpClient;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -113,16 +136,24 @@ public class Chan extends Application {
 
         File cacheDir = getExternalCacheDir() != null ? getExternalCacheDir() : getCacheDir();
 
-        replyManager = new ReplyManager(this, userAgent);
+        httpClient = new SharedHttpClient();
+
+        replyManager = new ReplyManager(this, userAgent, httpClient);
 
-        volleyRequestQueue = Volley.newRequestQueue(this, userAgent, new ProxiedHurlStack(userAgent), new File(cacheDir, Volley.DEFAULT_CACHE_DIR), VOLLEY_CACHE_SIZE);
+        volleyRequestQueue = Volley.newRequestQueue(this, userAgent, new OkHttpStack(httpClient, userAgent), new File(cacheDir, Volley.DEFAULT_CACHE_DIR), VOLLEY_CACHE_SIZE);
 
         final int runtimeMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
         final int lruImageCacheSize = runtimeMemory / 8;
 
-        imageLoader = new ImageLoader(volleyRequestQueue, new BitmapLruImageCache(lruImageCacheSize));
+        // In bytes, a quarter of the memory cache
+        bitmapPool = new BucketedBitmapPool(lruImageCacheSize * 1024L / 4);
+        imageCache = new BitmapLruImageCache(lruImageCacheSize, bitmapPool);
+        imageLoader = new ImageLoader(volleyRequestQueue, imageCache);
+        imageLoader.setBitmapPool(bitmapPool);
+        imageDecodeExecutor = new ImageDecodeExecutor(this);
+        imageLoader.setDecodeExecutor(imageDecodeExecutor);
 
-        fileCache = new FileCache(new File(cacheDir, FILE_CACHE_NAME), FILE_CACHE_DISK_SIZE, getUserAgent());
+        fileCache = new FileCache(new File(cacheDir, FILE_CACHE_NAME), FILE_CACHE_DISK_SIZE, getUserAgent(), httpClient);
 
         databaseManager = new DatabaseManager(this);
         boardManager = new BoardManager(databaseManager);
@@ -19,17 +19,23 @@ package org.floens.chan.chan;
 
 import android.text.TextUtils;
 
+import com.android.volley.ParseError;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.ServerError;
 import com.android.volley.VolleyError;
 
 import org.floens.chan.Chan;
 import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.exception.ChanLoaderException;
+import org.floens.chan.core.manager.WatchManager;
+import org.floens.chan.core.metrics.Metrics;
 import org.floens.chan.core.model.ChanThread;
+import org.floens.chan.core.model.ChanThreadIndex;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.net.ChanReaderRequest;
+import org.floens.chan.core.net.ParseScheduler;
 import org.floens.chan.ui.helper.PostHelper;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
@@ -48,6 +54,11 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
 
     private static final int[] watchTimeouts = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
 
+    // Threads are refreshed with their tail json when they have this many times the posts of the tail
+    private static final int TAIL_MIN_FACTOR = 4;
+    // A tail load does not see deleted posts before the tail, do a full load after this many tail loads
+    private static final int FULL_LOAD_INTERVAL = 10;
+
     private final List<ChanLoaderCallback> listeners = new ArrayList<>();
     private final Loadable loadable;
     private final RequestQueue volleyRequestQueue;
@@ -61,6 +72,19 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
     private long lastLoadTime;
     private ScheduledFuture<?> pendingFuture;
 
+    // Validators of the last response, the next request is conditional when the thread is loaded
+    private String lastModified;
+    private String etag;
+    private boolean lastResponseTail;
+    private int conditionalRequests;
+    private int notModifiedResponses;
+
+    // Tail size of the thread from the op, 0 if the thread has no tail json
+    private int tailSize;
+    private int tailLoadsSinceFull;
+    // Disabled after a failed tail load, the full load is always available
+    private boolean tailEnabled = true;
+
     public ChanLoader(Loadable loadable) {
         this.loadable = loadable;
 
@@ -120,6 +144,10 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
 
         currentTimeout = -1;
         thread = null;
+        lastModified = null;
+        etag = null;
+        tailSize = 0;
+        tailLoadsSinceFull = 0;
 
         request = getData();
     }
@@ -193,10 +221,46 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
         return thread;
     }
 
+    /**
+     * @return the number of conditional requests made by this loader
+     */
+    public int getConditionalRequestCount() {
+        return conditionalRequests;
+    }
+
+    /**
+     * @return the number of conditional requests that were answered with 304 Not Modified
+     */
+    public int getNotModifiedCount() {
+        return notModifiedResponses;
+    }
+
     @Override
     public void onResponse(ChanReaderRequest.ChanReaderResponse response) {
+        boolean tailRequest = request != null && request.isTail();
         request = null;
 
+        if (response.notModified) {
+            onNotModified();
+            return;
+        }
+
+        if (response.tailMismatch) {
+            // Posts are missing between the loaded posts and the tail
+            Logger.d(TAG, "Tail does not overlap, doing a full load");
+            Metrics.THREAD_TAIL_MISMATCH.increment();
+            tailLoadsSinceFull = FULL_LOAD_INTERVAL;
+            request = getData();
+            return;
+        }
+
+        lastModified = response.lastModified;
+        etag = response.etag;
+        lastResponseTail = tailRequest;
+        if (!tailRequest && response.op != null) {
+            tailSize = response.op.tailSize;
+        }
+
         if (response.posts.size() == 0) {
             onErrorResponse(new VolleyError("Post size is 0"));
             return;
@@ -208,6 +272,7 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
 
         thread.posts.clear();
         thread.posts.addAll(response.posts);
+        thread.setIndex(response.index);
 
         processResponse(response);
 
@@ -234,10 +299,41 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
         }
     }
 
+    /**
+     * Nothing changed since the last response, nothing was read or parsed. Back off like a response without
+     * new posts, and notify the listeners with the same thread so they keep their timers going.
+     */
+    private void onNotModified() {
+        if (thread == null) {
+            // Only possible if the thread was reset while the request was not cancelled in time
+            onErrorResponse(new VolleyError("Not modified without a loaded thread"));
+            return;
+        }
+
+        notModifiedResponses++;
+        Metrics.THREAD_NOT_MODIFIED.increment();
+
+        lastLoadTime = Time.get();
+        currentTimeout = Math.min(currentTimeout + 1, watchTimeouts.length - 1);
+
+        for (ChanLoaderCallback l : listeners) {
+            l.onChanLoaderData(thread);
+        }
+    }
+
     @Override
     public void onErrorResponse(VolleyError error) {
+        boolean tailRequest = request != null && request.isTail();
         request = null;
 
+        // Only when the tail document itself is unusable, network errors are handled like those of full loads
+        if (tailRequest && (error instanceof ParseError || isNotFound(error))) {
+            Logger.i(TAG, "Tail loading error, disabling tail loads", error);
+            tailEnabled = false;
+            request = getData();
+            return;
+        }
+
         Logger.i(TAG, "Loading error", error);
 
         clearTimer();
@@ -249,6 +345,10 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
         }
     }
 
+    private boolean isNotFound(VolleyError error) {
+        return error instanceof ServerError && error.networkResponse != null && error.networkResponse.statusCode == 404;
+    }
+
     /**
      * Final processing af a response that needs to happen on the main thread.
      *
@@ -310,14 +410,59 @@ public class ChanLoader implements Response.ErrorListener, Response.Listener<Cha
     private ChanReaderRequest getData() {
         Logger.d(TAG, "Requested " + loadable.board + ", " + loadable.no);
 
-        List<Post> cached = thread == null ? new ArrayList<Post>() : thread.posts;
-        ChanReaderRequest request = ChanReaderRequest.newInstance(loadable, cached, this, this);
+        ChanThreadIndex previous = thread == null ? null : thread.getIndex();
+        boolean tail = shouldLoadTail();
+        ChanReaderRequest request;
+        if (tail) {
+            request = ChanReaderRequest.newTailInstance(loadable, previous, getParseLane(), this, this);
+            tailLoadsSinceFull++;
+            Metrics.THREAD_TAIL_LOAD.increment();
+        } else {
+            request = ChanReaderRequest.newInstance(loadable, previous, getParseLane(), this, this);
+            tailLoadsSinceFull = 0;
+        }
+
+        if (thread != null) {
+            // The date is the modification of the thread, the ETag is only valid for the same document
+            String requestEtag = tail == lastResponseTail ? etag : null;
+            if (lastModified != null || requestEtag != null) {
+                request.setValidators(lastModified, requestEtag);
+                conditionalRequests++;
+                Metrics.THREAD_CONDITIONAL_REQUEST.increment();
+            }
+        }
 
         volleyRequestQueue.add(request);
 
         return request;
     }
 
+    /**
+     * Refresh with the tail json when the thread is big compared to its tail, and no deletion check is due.
+     */
+    private boolean shouldLoadTail() {
+        return tailEnabled && thread != null && loadable.isThreadMode() && tailSize > 0 &&
+                thread.posts.size() >= tailSize * TAIL_MIN_FACTOR && tailLoadsSinceFull < FULL_LOAD_INTERVAL;
+    }
+
+    /**
+     * The lane to parse in. Threads that are only loaded for pin watching are parsed after
+     * anything the user is looking at.
+     */
+    private ParseScheduler.Lane getParseLane() {
+        if (loadable.isCatalogMode()) {
+            return ParseScheduler.Lane.CATALOG;
+        }
+
+        for (int i = 0; i < listeners.size(); i++) {
+            if (!(listeners.get(i) instanceof WatchManager.PinWatcher)) {
+                return ParseScheduler.Lane.THREAD;
+            }
+        }
+
+        return ParseScheduler.Lane.BACKGROUND;
+    }
+
     public interface ChanLoaderCallback {
         void onChanLoaderData(ChanThread result);
 
@@ -62,9 +62,11 @@ public class ChanParser {
 
     private static ChanParser instance = new ChanParser();
     private final DatabaseManager databaseManager;
+    private final CommentParser commentParser;
 
     public ChanParser() {
         databaseManager = Chan.getDatabaseManager();
+        commentParser = new CommentParser(this);
     }
 
     public static ChanParser getInstance() {
@@ -187,6 +189,33 @@ public class ChanParser {
     }
 
     private CharSequence parseComment(Theme theme, Post post, String commentRaw) {
+        int linkablesSize = post.linkables.size();
+        int[] repliesTo = post.repliesTo.isEmpty() ? null : post.repliesTo.toArray();
+
+        try {
+            CharSequence fast = commentParser.parse(theme, post, commentRaw);
+            if (fast != null) {
+                return fast;
+            }
+        } catch (Exception e) {
+            Logger.e(TAG, "Error parsing comment html without jsoup", e);
+        }
+
+        // Undo what the fast path added before it gave up
+        while (post.linkables.size() > linkablesSize) {
+            post.linkables.remove(post.linkables.size() - 1);
+        }
+        post.repliesTo.clear();
+        if (repliesTo != null) {
+            for (int replyTo : repliesTo) {
+                post.repliesTo.add(replyTo);
+            }
+        }
+
+        return parseCommentWithJsoup(theme, post, commentRaw);
+    }
+
+    private CharSequence parseCommentWithJsoup(Theme theme, Post post, String commentRaw) {
         CharSequence total = new SpannableString("");
 
         try {
@@ -214,12 +243,7 @@ public class ChanParser {
 
     private CharSequence parseNode(Theme theme, Post post, Node node) {
         if (node instanceof TextNode) {
-            String text = ((TextNode) node).text();
-            SpannableString spannable = new SpannableString(text);
-
-            detectLinks(theme, post, text, spannable);
-
-            return spannable;
+            return createText(theme, post, ((TextNode) node).text());
         } else {
             switch (node.nodeName()) {
                 case "br": {
@@ -232,9 +256,7 @@ public class ChanParser {
 
                     Set<String> classes = span.classNames();
                     if (classes.contains("deadlink")) {
-                        quote = new SpannableString(span.text());
-                        quote.setSpan(new ForegroundColorSpanHashed(theme.quoteColor), 0, quote.length(), 0);
-                        quote.setSpan(new StrikethroughSpan(), 0, quote.length(), 0);
+                        quote = createDeadlink(theme, span.text());
                     } else if (classes.contains("fortune")) {
                         // html looks like <span class="fortune" style="color:#0893e1"><br><br><b>Your fortune:</b>
                         // manually add these <br>
@@ -266,9 +288,7 @@ public class ChanParser {
                     } else if (classes.contains("abbr")) {
                         return null;
                     } else {
-                        quote = new SpannableString(span.text());
-                        quote.setSpan(new ForegroundColorSpanHashed(theme.inlineQuoteColor), 0, quote.length(), 0);
-                        detectLinks(theme, post, span.text(), quote);
+                        quote = createInlineQuote(theme, post, span.text());
                     }
 
                     return quote;
@@ -311,43 +331,26 @@ public class ChanParser {
                     return tableTotal;
                 }
                 case "strong": {
-                    Element strong = (Element) node;
-
-                    SpannableString red = new SpannableString(strong.text());
-                    red.setSpan(new ForegroundColorSpanHashed(theme.quoteColor), 0, red.length(), 0);
-                    red.setSpan(new StyleSpan(Typeface.BOLD), 0, red.length(), 0);
-
-                    return red;
+                    return createStrong(theme, ((Element) node).text());
                 }
                 case "a": {
-                    CharSequence anchor = parseAnchor(theme, post, (Element) node);
-                    if (anchor != null) {
-                        return anchor;
+                    Element anchor = (Element) node;
+                    CharSequence link = parseAnchor(theme, post, anchor.attr("href"), anchor.classNames().contains("quotelink"), anchor.text());
+                    if (link != null) {
+                        return link;
                     } else {
-                        return ((Element) node).text();
+                        return anchor.text();
                     }
                 }
                 case "s": {
-                    Element spoiler = (Element) node;
-
-                    SpannableString link = new SpannableString(spoiler.text());
-
-                    PostLinkable pl = new PostLinkable(theme, post, spoiler.text(), spoiler.text(), PostLinkable.Type.SPOILER);
-                    link.setSpan(pl, 0, link.length(), 0);
-                    post.linkables.add(pl);
-
-                    return link;
+                    return createSpoiler(theme, post, ((Element) node).text());
                 }
                 case "pre": {
                     Element pre = (Element) node;
 
                     Set<String> classes = pre.classNames();
                     if (classes.contains("prettyprint")) {
-                        String text = getNodeText(pre);
-                        SpannableString monospace = new SpannableString(text);
-                        monospace.setSpan(new TypefaceSpan("monospace"), 0, monospace.length(), 0);
-                        monospace.setSpan(new AbsoluteSizeSpanHashed(sp(12f)), 0, monospace.length(), 0);
-                        return monospace;
+                        return createCode(getNodeText(pre));
                     } else {
                         return pre.text();
                     }
@@ -364,14 +367,53 @@ public class ChanParser {
         }
     }
 
-    private CharSequence parseAnchor(Theme theme, Post post, Element anchor) {
-        String href = anchor.attr("href");
-        Set<String> classes = anchor.classNames();
+    /*package*/ SpannableString createText(Theme theme, Post post, String text) {
+        SpannableString spannable = new SpannableString(text);
+        detectLinks(theme, post, text, spannable);
+        return spannable;
+    }
+
+    /*package*/ SpannableString createDeadlink(Theme theme, String text) {
+        SpannableString quote = new SpannableString(text);
+        quote.setSpan(new ForegroundColorSpanHashed(theme.quoteColor), 0, quote.length(), 0);
+        quote.setSpan(new StrikethroughSpan(), 0, quote.length(), 0);
+        return quote;
+    }
+
+    /*package*/ SpannableString createInlineQuote(Theme theme, Post post, String text) {
+        SpannableString quote = new SpannableString(text);
+        quote.setSpan(new ForegroundColorSpanHashed(theme.inlineQuoteColor), 0, quote.length(), 0);
+        detectLinks(theme, post, text, quote);
+        return quote;
+    }
+
+    /*package*/ SpannableString createStrong(Theme theme, String text) {
+        SpannableString red = new SpannableString(text);
+        red.setSpan(new ForegroundColorSpanHashed(theme.quoteColor), 0, red.length(), 0);
+        red.setSpan(new StyleSpan(Typeface.BOLD), 0, red.length(), 0);
+        return red;
+    }
+
+    /*package*/ SpannableString createSpoiler(Theme theme, Post post, String text) {
+        SpannableString link = new SpannableString(text);
+        PostLinkable pl = new PostLinkable(theme, post, text, text, PostLinkable.Type.SPOILER);
+        link.setSpan(pl, 0, link.length(), 0);
+        post.linkables.add(pl);
+        return link;
+    }
+
+    /*package*/ SpannableString createCode(String text) {
+        SpannableString monospace = new SpannableString(text);
+        monospace.setSpan(new TypefaceSpan("monospace"), 0, monospace.length(), 0);
+        monospace.setSpan(new AbsoluteSizeSpanHashed(sp(12f)), 0, monospace.length(), 0);
+        return monospace;
+    }
 
+    /*package*/ CharSequence parseAnchor(Theme theme, Post post, String href, boolean quotelink, String text) {
         PostLinkable.Type t = null;
         String key = null;
         Object value = null;
-        if (classes.contains("quotelink")) {
+        if (quotelink) {
             if (href.contains("/thread/")) {
                 // link to another thread
                 PostLinkable.ThreadLink threadLink = null;
@@ -393,7 +435,7 @@ public class ChanParser {
 
                 if (threadLink != null) {
                     t = PostLinkable.Type.THREAD;
-                    key = anchor.text() + " \u2192"; // arrow to the right
+                    key = text + " \u2192"; // arrow to the right
                     value = threadLink;
                 }
             } else {
@@ -410,7 +452,7 @@ public class ChanParser {
 
                 if (id >= 0) {
                     t = PostLinkable.Type.QUOTE;
-                    key = anchor.text();
+                    key = text;
                     value = id;
                     post.repliesTo.add(id);
 
@@ -428,7 +470,7 @@ public class ChanParser {
         } else {
             // normal link
             t = PostLinkable.Type.LINK;
-            key = anchor.text();
+            key = text;
             value = href;
         }
 
@@ -34,6 +34,10 @@ public class ChanUrls {
         return scheme() + "://a.4cdn.org/" + board + "/thread/" + no + ".json";
     }
 
+    public static String getThreadTailUrl(String board, int no) {
+        return scheme() + "://a.4cdn.org/" + board + "/thread/" + no + "-tail.json";
+    }
+
     public static String getCaptchaSiteKey() {
         return "6Ldp2bsSAAAAAAJ5uyx_lx34lJeEpTLVkP5k04qc";
     }
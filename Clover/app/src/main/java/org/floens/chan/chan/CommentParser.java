@@ -0,0 +1,393 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.chan;
+
+import android.text.TextUtils;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.ui.theme.Theme;
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Single pass parser for the small subset of html 4chan uses in comments, without building a DOM.<br>
+ * The spans are created with the same ChanParser methods the Jsoup path uses, and the text of the elements is
+ * normalized the same way Jsoup does it, so the result is identical.<br>
+ * {@link #parse(Theme, Post, String)} returns null when it meets markup it doesn't know, ChanParser then falls back
+ * to parsing with Jsoup.
+ */
+class CommentParser {
+    private final ChanParser chanParser;
+
+    public CommentParser(ChanParser chanParser) {
+        this.chanParser = chanParser;
+    }
+
+    /**
+     * Parse the comment html.
+     *
+     * @return the parsed comment or null if the html contained unsupported markup.
+     */
+    public CharSequence parse(Theme theme, Post post, String comment) {
+        List<CharSequence> texts = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        Tag tag = new Tag();
+        List<String> openTags = new ArrayList<>(4);
+
+        int length = comment.length();
+        int i = 0;
+        while (i < length) {
+            int tagStart = comment.indexOf('<', i);
+            if (tagStart < 0) {
+                text.append(comment, i, length);
+                break;
+            }
+
+            text.append(comment, i, tagStart);
+
+            if (!readTag(comment, tagStart, tag) || tag.closing) {
+                // A stray closing tag or something that isn't a tag
+                return null;
+            }
+            i = tag.end;
+
+            if (tag.name.equals("wbr")) {
+                // Breaks in long words and links, the text on both sides is one text node
+                continue;
+            }
+
+            flushText(theme, post, text, texts);
+
+            if (tag.name.equals("br")) {
+                texts.add("\n");
+                continue;
+            }
+
+            if (tag.selfClosing) {
+                return null;
+            }
+
+            String name = tag.name;
+            String classes = tag.classes;
+            String href = tag.href;
+            boolean pre = name.equals("pre");
+
+            // Read the contents of this element up to the matching closing tag
+            openTags.clear();
+            while (true) {
+                tagStart = comment.indexOf('<', i);
+                if (tagStart < 0) {
+                    // Unclosed element
+                    return null;
+                }
+
+                text.append(comment, i, tagStart);
+
+                if (!readTag(comment, tagStart, tag)) {
+                    return null;
+                }
+                i = tag.end;
+
+                if (tag.closing) {
+                    if (openTags.isEmpty()) {
+                        if (tag.name.equals(name)) {
+                            break;
+                        } else {
+                            return null;
+                        }
+                    } else if (openTags.get(openTags.size() - 1).equals(tag.name)) {
+                        openTags.remove(openTags.size() - 1);
+                    } else {
+                        return null;
+                    }
+                } else if (tag.name.equals("wbr")) {
+                    // ignored
+                } else if (tag.name.equals("br")) {
+                    // Element.text() adds a space for a br, in code it is kept as a newline
+                    text.append(pre ? '\n' : ' ');
+                } else if (!pre && !tag.selfClosing && isInlineTag(tag.name)) {
+                    openTags.add(tag.name);
+                } else {
+                    return null;
+                }
+            }
+
+            if (name.equals("span") && hasClass(classes, "abbr")) {
+                // Not shown
+                text.setLength(0);
+                continue;
+            }
+
+            CharSequence element = createElement(theme, post, name, classes, href, text);
+            text.setLength(0);
+            if (element == null) {
+                return null;
+            }
+            texts.add(element);
+        }
+
+        flushText(theme, post, text, texts);
+
+        return TextUtils.concat(texts.toArray(new CharSequence[texts.size()]));
+    }
+
+    /**
+     * Create the spannable for a top level element, matching ChanParser.parseNode.
+     *
+     * @return the spannable or null when the element is not supported.
+     */
+    private CharSequence createElement(Theme theme, Post post, String name, String classes, String href, StringBuilder raw) {
+        switch (name) {
+            case "span": {
+                if (hasClass(classes, "fortune")) {
+                    // Has styling and leading breaks that need the full parser
+                    return null;
+                } else if (hasClass(classes, "deadlink")) {
+                    return chanParser.createDeadlink(theme, elementText(raw));
+                } else {
+                    return chanParser.createInlineQuote(theme, post, elementText(raw));
+                }
+            }
+            case "strong":
+                return chanParser.createStrong(theme, elementText(raw));
+            case "a": {
+                String text = elementText(raw);
+                CharSequence link = chanParser.parseAnchor(theme, post, href, hasClass(classes, "quotelink"), text);
+                return link != null ? link : text;
+            }
+            case "s":
+                return chanParser.createSpoiler(theme, post, elementText(raw));
+            case "pre":
+                if (hasClass(classes, "prettyprint")) {
+                    // Whitespace is preserved in code
+                    return chanParser.createCode(decode(raw.toString()).trim());
+                } else {
+                    return null;
+                }
+            case "b":
+            case "u":
+            case "i":
+            case "em":
+                // Known tag without styling, add the inner part
+                return elementText(raw);
+            default:
+                return null;
+        }
+    }
+
+    private void flushText(Theme theme, Post post, StringBuilder text, List<CharSequence> texts) {
+        if (text.length() > 0) {
+            // Same as TextNode.text()
+            texts.add(chanParser.createText(theme, post, normaliseWhitespace(decode(text.toString()))));
+            text.setLength(0);
+        }
+    }
+
+    private static boolean isInlineTag(String name) {
+        switch (name) {
+            case "span":
+            case "s":
+            case "b":
+            case "u":
+            case "i":
+            case "em":
+            case "strong":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Same as Element.text() for elements that only contain text and inline elements.
+     */
+    private static String elementText(StringBuilder raw) {
+        return normaliseWhitespace(decode(raw.toString())).trim();
+    }
+
+    private static String decode(String text) {
+        if (text.indexOf('&') >= 0) {
+            return Parser.unescapeEntities(text, false);
+        } else {
+            return text;
+        }
+    }
+
+    /**
+     * Collapse runs of whitespace into a single space, like org.jsoup.helper.StringUtil.normaliseWhitespace.
+     */
+    private static String normaliseWhitespace(String text) {
+        int length = text.length();
+        StringBuilder sb = null;
+        boolean lastWasWhite = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean white = isWhitespace(c);
+            if (sb == null) {
+                if (white && (lastWasWhite || c != ' ')) {
+                    // First character that needs changing, copy what we have until now
+                    sb = new StringBuilder(length);
+                    sb.append(text, 0, lastWasWhite ? i - 1 : i);
+                    sb.append(' ');
+                } else {
+                    lastWasWhite = white;
+                    continue;
+                }
+            } else if (white) {
+                if (!lastWasWhite) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+            }
+            lastWasWhite = white;
+        }
+
+        return sb == null ? text : sb.toString();
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean hasClass(String classes, String name) {
+        if (classes == null) {
+            return false;
+        }
+
+        int index = 0;
+        while ((index = classes.indexOf(name, index)) >= 0) {
+            int end = index + name.length();
+            if ((index == 0 || isWhitespace(classes.charAt(index - 1))) &&
+                    (end == classes.length() || isWhitespace(classes.charAt(end)))) {
+                return true;
+            }
+            index = end;
+        }
+        return false;
+    }
+
+    /**
+     * Read the tag starting at {@code start}, only the class and href attributes are kept.
+     *
+     * @return false if this is not a tag that can be parsed.
+     */
+    private static boolean readTag(String html, int start, Tag tag) {
+        tag.closing = false;
+        tag.selfClosing = false;
+        tag.classes = null;
+        tag.href = "";
+
+        int length = html.length();
+        int i = start + 1;
+        if (i < length && html.charAt(i) == '/') {
+            tag.closing = true;
+            i++;
+        }
+
+        int nameStart = i;
+        while (i < length && Character.isLetterOrDigit(html.charAt(i))) {
+            i++;
+        }
+        if (i == nameStart || !Character.isLetter(html.charAt(nameStart))) {
+            // Comments, doctypes and a lone <
+            return false;
+        }
+        tag.name = html.substring(nameStart, i).toLowerCase(Locale.ENGLISH);
+
+        while (true) {
+            while (i < length && isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                return false;
+            }
+
+            char c = html.charAt(i);
+            if (c == '>') {
+                tag.end = i + 1;
+                return true;
+            } else if (c == '/') {
+                if (i + 1 < length && html.charAt(i + 1) == '>') {
+                    tag.selfClosing = true;
+                    tag.end = i + 2;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+
+            int attributeStart = i;
+            while (i < length && !isWhitespace(html.charAt(i)) && "=>/\"'<".indexOf(html.charAt(i)) < 0) {
+                i++;
+            }
+            if (i == attributeStart || i >= length) {
+                return false;
+            }
+            String attribute = html.substring(attributeStart, i).toLowerCase(Locale.ENGLISH);
+
+            String value = "";
+            if (html.charAt(i) == '=') {
+                i++;
+                if (i >= length) {
+                    return false;
+                }
+
+                char quote = html.charAt(i);
+                if (quote == '"' || quote == '\'') {
+                    int valueEnd = html.indexOf(quote, i + 1);
+                    if (valueEnd < 0) {
+                        return false;
+                    }
+                    value = html.substring(i + 1, valueEnd);
+                    i = valueEnd + 1;
+                } else {
+                    int valueStart = i;
+                    while (i < length && !isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                        i++;
+                    }
+                    value = html.substring(valueStart, i);
+                }
+
+                if (value.indexOf('&') >= 0) {
+                    value = Parser.unescapeEntities(value, true);
+                }
+            }
+
+            if (tag.closing) {
+                return false;
+            } else if (attribute.equals("class")) {
+                tag.classes = value;
+            } else if (attribute.equals("href")) {
+                tag.href = value;
+            }
+        }
+    }
+
+    private static class Tag {
+        String name;
+        boolean closing;
+        boolean selfClosing;
+        String classes;
+        String href;
+        int end;
+    }
+}
@@ -17,29 +17,34 @@
  */
 package org.floens.chan.core.cache;
 
+import org.floens.chan.core.metrics.Metrics;
+import org.floens.chan.core.net.SharedHttpClient;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
-import org.floens.chan.utils.Time;
 
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -48,183 +53,194 @@ import okio.BufferedSource;
 
 public class FileCache {
     private static final String TAG = "FileCache";
-    private static final int TIMEOUT = 10000;
-    private static final int TRIM_TRIES = 20;
     private static final int THREAD_COUNT = 2;
+    // Files larger than this are downloaded in SEGMENT_COUNT parts at the same time, when enabled
+    private static final long SEGMENT_MIN_SIZE = 2 * 1024 * 1024;
+    private static final int SEGMENT_COUNT = 3;
+    private static final String PARTIAL_SUFFIX = ".partial";
 
     private static final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    // Downloads the segments after the first, the first one is done by the download thread itself
+    private static final ExecutorService segmentExecutor = Executors.newFixedThreadPool(THREAD_COUNT * (SEGMENT_COUNT - 1));
+    // Journal writes and trimming
+    private static final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
     private String userAgent;
-    private OkHttpClient httpClient;
+    private final SharedHttpClient httpClient;
 
     private final File directory;
     private final long maxSize;
-    private long size;
+    private final FileCacheIndex index;
 
-    private List<FileCacheDownloader> downloaders = new ArrayList<>();
+    private final ConcurrentMap<String, FileCacheDownloader> downloaders = new ConcurrentHashMap<>();
 
-    public FileCache(File directory, long maxSize, String userAgent) {
+    public FileCache(File directory, long maxSize, String userAgent, SharedHttpClient httpClient) {
         this.directory = directory;
         this.maxSize = maxSize;
         this.userAgent = userAgent;
+        this.httpClient = httpClient;
 
-        httpClient = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                // Disable SPDY, causes reproducible timeouts, only one download at the same time and other fun stuff
-                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
-                .build();
+        index = new FileCacheIndex(directory);
 
-        makeDir();
-        calculateSize();
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                makeDir();
+                index.load();
+            }
+        });
     }
 
     public void logStats() {
-        Logger.i(TAG, "Cache size = " + size + "/" + maxSize);
+        Logger.i(TAG, "Cache size = " + index.getSize() + "/" + maxSize + ", " + index.getCount() + " files");
         Logger.i(TAG, "downloaders.size() = " + downloaders.size());
-        for (FileCacheDownloader downloader : downloaders) {
-            Logger.i(TAG, "url = " + downloader.getUrl() + " cancelled = " + downloader.cancelled);
+        for (FileCacheDownloader downloader : downloaders.values()) {
+            Logger.i(TAG, "url = " + downloader.getUrl() + " cancelled = " + downloader.cancelled.get());
         }
     }
 
     public void clearCache() {
         Logger.d(TAG, "Clearing cache");
-        for (FileCacheDownloader downloader : downloaders) {
+        for (FileCacheDownloader downloader : downloaders.values()) {
             downloader.cancel();
         }
 
-        if (directory.exists() && directory.isDirectory()) {
-            for (File file : directory.listFiles()) {
-                if (!file.delete()) {
-                    Logger.d(TAG, "Could not delete cache file while clearing cache " + file.getName());
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (directory.exists() && directory.isDirectory()) {
+                    for (File file : directory.listFiles()) {
+                        if (!file.delete()) {
+                            Logger.d(TAG, "Could not delete cache file while clearing cache " + file.getName());
+                        }
+                    }
                 }
+                index.clear();
             }
-        }
-        calculateSize();
+        });
     }
 
     /**
      * Start downloading the file located at the url.<br>
      * If the file is in the cache then the callback is executed immediately and null is returned.<br>
      * Otherwise if the file is downloading or has not yet started downloading an {@link FileCacheDownloader} is returned.<br>
-     * Only call this method on the UI thread.<br>
+     * This method only does in memory lookups, all disk io happens on the download threads. Until the index is loaded
+     * every file is a miss here, the download thread finds it on disk. The progress and result callbacks are
+     * delivered on the UI thread, unless the file was in the cache.<br>
+     * Threadsafe.
      *
      * @param urlString the url to download.
      * @param callback  callback to execute callbacks on.
      * @return null if in the cache, {@link FileCacheDownloader} otherwise.
      */
     public FileCacheDownloader downloadFile(final String urlString, final DownloadedCallback callback) {
-        FileCacheDownloader downloader = null;
-        for (FileCacheDownloader downloaderItem : downloaders) {
-            if (downloaderItem.getUrl().equals(urlString)) {
-                downloader = downloaderItem;
-                break;
-            }
+        FileCacheDownloader downloader = downloaders.get(urlString);
+        if (downloader != null && downloader.addCallback(callback)) {
+            return downloader;
         }
 
-        if (downloader != null) {
-            downloader.addCallback(callback);
-            return downloader;
-        } else {
-            File file = get(urlString);
-            if (file.exists()) {
-                // TODO: setLastModified doesn't seem to work on Android...
-                if (!file.setLastModified(Time.get())) {
-//                    Logger.e(TAG, "Could not set last modified time on file");
-                }
-                callback.onProgress(0, 0, true);
-                callback.onSuccess(file);
-                return null;
+        File file = get(urlString);
+        if (index.touch(file.getName())) {
+            Metrics.FILE_CACHE_HIT.increment();
+            scheduleFlush();
+            callback.onProgress(0, 0, true);
+            callback.onSuccess(file);
+            return null;
+        }
+
+        FileCacheDownloader newDownloader = new FileCacheDownloader(this, urlString, file, userAgent);
+        FileCacheDownloader existing = downloaders.putIfAbsent(urlString, newDownloader);
+        if (existing != null) {
+            if (existing.addCallback(callback)) {
+                return existing;
             } else {
-                FileCacheDownloader newDownloader = new FileCacheDownloader(this, urlString, file, userAgent);
-                newDownloader.addCallback(callback);
-                Future<?> future = executor.submit(newDownloader);
-                newDownloader.setFuture(future);
-                downloaders.add(newDownloader);
-                return newDownloader;
+                // Finished between the lookups, it is now either in the cache or failed
+                downloaders.remove(urlString, existing);
+                return downloadFile(urlString, callback);
             }
         }
+
+        Metrics.FILE_CACHE_MISS.increment();
+        newDownloader.addCallback(callback);
+        Future<?> future = executor.submit(newDownloader);
+        newDownloader.setFuture(future);
+        return newDownloader;
     }
 
     public boolean exists(String key) {
-        return get(key).exists();
+        return index.contains(getName(key));
     }
 
     public File get(String key) {
-        makeDir();
+        return new File(directory, getName(key));
+    }
 
-        return new File(directory, Integer.toString(key.hashCode()));
+    private String getName(String key) {
+        return Integer.toString(key.hashCode());
     }
 
-    private void put(File file) {
-        size += file.length();
+    private void put(File file, long fileSize) {
+        index.put(file.getName(), fileSize);
 
-        trim();
+        if (index.getSize() > maxSize) {
+            indexExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    trim();
+                }
+            });
+        }
+        scheduleFlush();
     }
 
-    private boolean delete(File file) {
-        size -= file.length();
+    /**
+     * Keep the partial file of a failed download in the index, so that it counts for the cache size and is trimmed
+     * when not resumed.
+     */
+    private void putPartial(File partial) {
+        put(partial, partial.length());
+    }
 
-        return file.delete();
+    /**
+     * Take the partial file out of the index while it is being resumed.
+     */
+    private void removePartial(File partial) {
+        index.remove(partial.getName());
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                index.flush();
+            }
+        });
     }
 
     private void makeDir() {
         if (!directory.exists()) {
             if (!directory.mkdirs()) {
                 Logger.e(TAG, "Unable to create file cache dir " + directory.getAbsolutePath());
-            } else {
-                calculateSize();
             }
         }
     }
 
+    // Called on the index executor
     private void trim() {
-        int tries = 0;
-        while (size > maxSize && tries++ < TRIM_TRIES) {
-            File[] files = directory.listFiles();
-            if (files == null || files.length <= 1) {
-                break;
-            }
-            long age = Long.MAX_VALUE;
-            long last;
-            File oldest = null;
-            for (File file : files) {
-                last = file.lastModified();
-                if (last < age && last != 0L) {
-                    age = last;
-                    oldest = file;
-                }
-            }
-
-            if (oldest == null) {
-                Logger.e(TAG, "No files to trim");
-                break;
-            } else {
-                Logger.d(TAG, "Deleting " + oldest.getAbsolutePath());
-                if (!delete(oldest)) {
-                    Logger.e(TAG, "Cannot delete cache file while trimming");
-                    calculateSize();
-                    break;
-                }
-            }
-
-            calculateSize();
-        }
-    }
-
-    private void calculateSize() {
-        size = 0;
-
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                size += file.length();
+        List<String> removed = index.trim(maxSize);
+        Metrics.FILE_CACHE_EVICT.add(removed.size());
+        for (String name : removed) {
+            File file = new File(directory, name);
+            Logger.d(TAG, "Deleting " + file.getAbsolutePath());
+            if (file.exists() && !file.delete()) {
+                Logger.e(TAG, "Cannot delete cache file while trimming");
             }
         }
+        index.flush();
     }
 
     private void removeFromDownloaders(FileCacheDownloader downloader) {
-        downloaders.remove(downloader);
+        downloaders.remove(downloader.getUrl(), downloader);
     }
 
     public interface DownloadedCallback {
@@ -239,34 +255,69 @@ public class FileCache {
         private final FileCache fileCache;
         private final String url;
         private final File output;
+        // Written to while downloading, renamed to output when complete. Kept on network errors to resume later.
+        private final File partial;
         private final String userAgent;
 
-        // Modify the callbacks list on the UI thread only!
+        // Synchronize on this when accessing
         private final List<DownloadedCallback> callbacks = new ArrayList<>();
+        private boolean finished = false;
 
         private AtomicBoolean running = new AtomicBoolean(false);
         private AtomicBoolean userCancelled = new AtomicBoolean(false);
+        private AtomicBoolean cancelled = new AtomicBoolean(false);
 
         private Closeable downloadInput;
         private Closeable downloadOutput;
         private Call call;
         private ResponseBody body;
-        private boolean cancelled = false;
-        private Future<?> future;
+        // Set after the downloader is published, null until then
+        private volatile Future<?> future;
+
+        // Synchronize on this list when accessing
+        private final List<Call> segmentCalls = new ArrayList<>();
+        // A segmented download leaves holes in the partial file, it can't be resumed
+        private volatile boolean segmented = false;
+        private final AtomicLong downloaded = new AtomicLong();
+        private final AtomicLong progressPosted = new AtomicLong();
 
         private FileCacheDownloader(FileCache fileCache, String url, File output, String userAgent) {
             this.fileCache = fileCache;
             this.url = url;
             this.output = output;
             this.userAgent = userAgent;
+            partial = new File(output.getParentFile(), output.getName() + PARTIAL_SUFFIX);
         }
 
         public String getUrl() {
             return url;
         }
 
-        public void addCallback(DownloadedCallback callback) {
+        /**
+         * Add a callback to this download.
+         *
+         * @return false if the download already finished, the callback is not added.
+         */
+        private synchronized boolean addCallback(DownloadedCallback callback) {
+            if (finished) {
+                return false;
+            }
             callbacks.add(callback);
+            return true;
+        }
+
+        private synchronized List<DownloadedCallback> getCallbacks() {
+            return new ArrayList<>(callbacks);
+        }
+
+        /**
+         * Mark the download as finished, no more callbacks can be added after this.
+         *
+         * @return the callbacks to deliver the result to.
+         */
+        private synchronized List<DownloadedCallback> finish() {
+            finished = true;
+            return new ArrayList<>(callbacks);
         }
 
         /**
@@ -274,22 +325,47 @@ public class FileCache {
          */
         public void cancel() {
             if (userCancelled.compareAndSet(false, true)) {
-                future.cancel(true);
+                Future<?> future = this.future;
+                if (future != null) {
+                    future.cancel(true);
+                }
                 // Did not start running yet, call cancelDueToCancellation manually to remove from downloaders list.
+                // Nothing was written yet, so no need to purge the output.
                 if (!running.get()) {
-                    cancelDueToCancellation();
+                    cancelDueToCancellation(false);
                 }
             }
         }
 
+        /**
+         * Remove the callback from this download, and cancel the download when no other callbacks are left.
+         * Use this instead of {@link #cancel()} when the download may be shared, like with prefetching.
+         */
+        public void cancel(DownloadedCallback callback) {
+            synchronized (this) {
+                callbacks.remove(callback);
+                if (!callbacks.isEmpty() || finished) {
+                    return;
+                }
+                // Don't let new callbacks join a download that is about to be cancelled
+                finished = true;
+            }
+            cancel();
+        }
+
         public void run() {
             Logger.d(TAG, "Start load of " + url);
             try {
                 running.set(true);
+                if (userCancelled.get()) {
+                    // Cancelled before the future was set
+                    cancelDueToCancellation(false);
+                    return;
+                }
                 execute();
             } catch (Exception e) {
                 if (userCancelled.get()) {
-                    cancelDueToCancellation();
+                    cancelDueToCancellation(true);
                 } else {
                     cancelDueToException(e);
                 }
@@ -304,20 +380,23 @@ public class FileCache {
 
         private void setFuture(Future<?> future) {
             this.future = future;
+            if (userCancelled.get()) {
+                future.cancel(true);
+            }
         }
 
         private void cancelDueToException(Exception e) {
-            if (cancelled) return;
-            cancelled = true;
+            if (!cancelled.compareAndSet(false, true)) return;
 
             Logger.w(TAG, "IOException downloading url " + url, e);
 
+            keepPartial();
+            removeFromDownloadersList();
+            final List<DownloadedCallback> targets = finish();
             post(new Runnable() {
                 @Override
                 public void run() {
-                    purgeOutput();
-                    removeFromDownloadersList();
-                    for (DownloadedCallback callback : callbacks) {
+                    for (DownloadedCallback callback : targets) {
                         callback.onProgress(0, 0, true);
                         callback.onFail(false);
                     }
@@ -326,17 +405,17 @@ public class FileCache {
         }
 
         private void cancelDueToHttpError(final int code) {
-            if (cancelled) return;
-            cancelled = true;
+            if (!cancelled.compareAndSet(false, true)) return;
 
             Logger.w(TAG, "Cancel " + url + " due to http error, code: " + code);
 
+            purgeOutput();
+            removeFromDownloadersList();
+            final List<DownloadedCallback> targets = finish();
             post(new Runnable() {
                 @Override
                 public void run() {
-                    purgeOutput();
-                    removeFromDownloadersList();
-                    for (DownloadedCallback callback : callbacks) {
+                    for (DownloadedCallback callback : targets) {
                         callback.onProgress(0, 0, true);
                         callback.onFail(code == 404);
                     }
@@ -344,30 +423,29 @@ public class FileCache {
             });
         }
 
-        private void cancelDueToCancellation() {
-            if (cancelled) return;
-            cancelled = true;
+        private void cancelDueToCancellation(boolean purge) {
+            if (!cancelled.compareAndSet(false, true)) return;
 
             Logger.d(TAG, "Cancel " + url + " due to cancellation");
 
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    purgeOutput();
-                    removeFromDownloadersList();
-                }
-            });
+            if (purge) {
+                keepPartial();
+            }
+            removeFromDownloadersList();
+            finish();
         }
 
-        private void success() {
+        private void success(long fileSize) {
             Logger.d(TAG, "Success downloading " + url);
 
+            // Put in the index before removing from the downloaders, so that it's always found by downloadFile
+            fileCache.put(output, fileSize);
+            removeFromDownloadersList();
+            final List<DownloadedCallback> targets = finish();
             post(new Runnable() {
                 @Override
                 public void run() {
-                    fileCache.put(output);
-                    removeFromDownloadersList();
-                    for (DownloadedCallback callback : callbacks) {
+                    for (DownloadedCallback callback : targets) {
                         callback.onProgress(0, 0, true);
                         callback.onSuccess(output);
                     }
@@ -392,6 +470,13 @@ public class FileCache {
                 Util.closeQuietly(body);
                 body = null;
             }
+
+            synchronized (segmentCalls) {
+                for (Call segmentCall : segmentCalls) {
+                    segmentCall.cancel();
+                }
+                segmentCalls.clear();
+            }
         }
 
         private void removeFromDownloadersList() {
@@ -399,18 +484,30 @@ public class FileCache {
         }
 
         private void purgeOutput() {
-            if (output.exists()) {
-                if (!output.delete()) {
+            if (partial.exists()) {
+                if (!partial.delete()) {
                     Logger.w(TAG, "Could not delete the file in purgeOutput");
                 }
             }
         }
 
+        /**
+         * Keep what was downloaded so far to resume from next time, or purge it if it can't be resumed.
+         */
+        private void keepPartial() {
+            if (!segmented && partial.length() > 0) {
+                Logger.d(TAG, "Keeping " + partial.length() + " bytes of " + url + " to resume later");
+                fileCache.putPartial(partial);
+            } else {
+                purgeOutput();
+            }
+        }
+
         private void postProgress(final long downloaded, final long total, final boolean done) {
             post(new Runnable() {
                 @Override
                 public void run() {
-                    for (DownloadedCallback callback : callbacks) {
+                    for (DownloadedCallback callback : getCallbacks()) {
                         callback.onProgress(downloaded, total, done);
                     }
                 }
@@ -422,17 +519,32 @@ public class FileCache {
         }
 
         private void execute() throws Exception {
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("User-Agent", userAgent)
-                    .build();
+            fileCache.makeDir();
+
+            if (output.exists()) {
+                // Downloaded before, but not in the index yet because it was still loading
+                success(output.length());
+                return;
+            }
 
-            call = fileCache.httpClient.newBuilder()
-                    .proxy(ChanSettings.getProxy())
-                    .build()
-                    .newCall(request);
+            long resumeFrom = 0;
+            if (partial.exists()) {
+                // Taken out of the index so that it is not trimmed while appending to it
+                fileCache.removePartial(partial);
+                resumeFrom = partial.length();
+            }
 
+            call = newCall(resumeFrom > 0 ? "bytes=" + resumeFrom + "-" : null);
             Response response = call.execute();
+            if (response.code() == 416 && resumeFrom > 0) {
+                // The partial file does not belong to the file on the server, start over
+                Util.closeQuietly(response.body());
+                purgeOutput();
+                resumeFrom = 0;
+                call = newCall(null);
+                response = call.execute();
+            }
+
             if (!response.isSuccessful()) {
                 cancelDueToHttpError(response.code());
                 return;
@@ -441,30 +553,194 @@ public class FileCache {
             body = response.body();
             long contentLength = body.contentLength();
             BufferedSource source = body.source();
-            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(output));
-
             downloadInput = source;
-            downloadOutput = outputStream;
+
+            long offset = 0;
+            if (response.code() == 206) {
+                offset = parseContentRangeStart(response.header("Content-Range"));
+                if (offset != resumeFrom) {
+                    purgeOutput();
+                    throw new IOException("Unexpected content range " + response.header("Content-Range"));
+                }
+                Logger.d(TAG, "Resuming " + url + " from " + offset);
+            }
+            long total = contentLength < 0 ? -1 : offset + contentLength;
+            downloaded.set(offset);
 
             Logger.d(TAG, "Got input stream for " + url);
 
-            int read;
-            long total = 0;
-            long totalLast = 0;
-            byte[] buffer = new byte[4096];
-            while ((read = source.read(buffer)) != -1) {
+            if (offset == 0 && total >= SEGMENT_MIN_SIZE && ChanSettings.parallelDownloads.get() &&
+                    "bytes".equals(response.header("Accept-Ranges"))) {
+                executeSegmented(source, total);
+            } else {
+                OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(partial, offset > 0));
+                downloadOutput = outputStream;
+
+                long read = copy(source, outputStream, contentLength, total);
+                outputStream.close();
+
+                if (contentLength >= 0 && read != contentLength) {
+                    throw new IOException("Unexpected end of stream, got " + read + " of " + contentLength);
+                }
+            }
+
+            if (!partial.renameTo(output)) {
+                throw new IOException("Could not rename the downloaded file");
+            }
+
+            success(output.length());
+        }
+
+        /**
+         * Download the file in SEGMENT_COUNT parts at the same time into a preallocated file. The first part is read
+         * from the response that is already open, the others are requested with a range on the segment executor.
+         */
+        private void executeSegmented(BufferedSource source, long total) throws Exception {
+            segmented = true;
+
+            RandomAccessFile file = new RandomAccessFile(partial, "rw");
+            downloadOutput = file;
+            file.setLength(total);
+
+            long segmentSize = (total + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+            Logger.d(TAG, "Downloading " + url + " in " + SEGMENT_COUNT + " segments of " + segmentSize + " bytes");
+
+            List<Future<Void>> segments = new ArrayList<>(SEGMENT_COUNT - 1);
+            try {
+                for (int i = 1; i < SEGMENT_COUNT; i++) {
+                    long start = i * segmentSize;
+                    long end = Math.min(total, start + segmentSize) - 1;
+                    if (start <= end) {
+                        segments.add(segmentExecutor.submit(new Segment(start, end, total)));
+                    }
+                }
+
+                OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(file.getChannel()));
+                long read = copy(source, outputStream, segmentSize, total);
+                outputStream.flush();
+                if (read != Math.min(segmentSize, total)) {
+                    throw new IOException("Unexpected end of stream in the first segment");
+                }
+
+                for (Future<Void> segment : segments) {
+                    try {
+                        segment.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException("Segment failed", e.getCause());
+                    }
+                }
+            } finally {
+                for (Future<Void> segment : segments) {
+                    segment.cancel(true);
+                }
+            }
+
+            file.close();
+        }
+
+        private Call newCall(String range) {
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .header("User-Agent", userAgent);
+            if (range != null) {
+                builder.header("Range", range);
+            }
+
+            return fileCache.httpClient.get().newCall(builder.build());
+        }
+
+        /**
+         * Copy from the source to the output, up to limit bytes or until the end of the source if limit is negative.
+         *
+         * @return the number of bytes copied
+         */
+        private long copy(BufferedSource source, OutputStream outputStream, long limit, long total) throws IOException {
+            long copied = 0;
+            byte[] buffer = new byte[8192];
+            while (limit < 0 || copied < limit) {
+                int toRead = limit < 0 ? buffer.length : (int) Math.min(buffer.length, limit - copied);
+                int read = source.read(buffer, 0, toRead);
+                if (read == -1) {
+                    break;
+                }
+
                 outputStream.write(buffer, 0, read);
-                total += read;
+                copied += read;
+
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
 
-                if (total >= totalLast + 16384) {
-                    totalLast = total;
-                    postProgress(total, contentLength <= 0 ? total : contentLength, false);
+                long done = downloaded.addAndGet(read);
+                long posted = progressPosted.get();
+                if (done >= posted + 16384 && progressPosted.compareAndSet(posted, done)) {
+                    postProgress(done, total <= 0 ? done : total, false);
                 }
             }
+            return copied;
+        }
+
+        /**
+         * Get the first byte position from a "bytes start-end/total" Content-Range header.
+         *
+         * @return the position or -1 if the header is invalid
+         */
+        private static long parseContentRangeStart(String contentRange) {
+            if (contentRange == null || !contentRange.startsWith("bytes ")) {
+                return -1;
+            }
+
+            int dash = contentRange.indexOf('-');
+            if (dash < 0) {
+                return -1;
+            }
 
-            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+            try {
+                return Long.parseLong(contentRange.substring(6, dash).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
 
-            success();
+        private class Segment implements Callable<Void> {
+            private final long start;
+            private final long end;
+            private final long total;
+
+            public Segment(long start, long end, long total) {
+                this.start = start;
+                this.end = end;
+                this.total = total;
+            }
+
+            @Override
+            public Void call() throws Exception {
+                Call segmentCall = newCall("bytes=" + start + "-" + end);
+                synchronized (segmentCalls) {
+                    segmentCalls.add(segmentCall);
+                }
+
+                Response response = segmentCall.execute();
+                ResponseBody segmentBody = response.body();
+                RandomAccessFile file = null;
+                try {
+                    if (response.code() != 206 || parseContentRangeStart(response.header("Content-Range")) != start) {
+                        throw new IOException("Server did not return the range, code: " + response.code());
+                    }
+
+                    file = new RandomAccessFile(partial, "rw");
+                    file.seek(start);
+                    OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(file.getChannel()));
+                    long length = end - start + 1;
+                    long read = copy(segmentBody.source(), outputStream, length, total);
+                    outputStream.flush();
+                    if (read != length) {
+                        throw new IOException("Unexpected end of stream in segment " + start + "-" + end);
+                    }
+                } finally {
+                    Util.closeQuietly(segmentBody);
+                    Util.closeQuietly(file);
+                }
+                return null;
+            }
         }
     }
 }
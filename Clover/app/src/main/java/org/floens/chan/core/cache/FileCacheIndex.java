@@ -0,0 +1,420 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory index of the files in the {@link FileCache} directory, in least recently used order and with the total
+ * size in bytes, so that no directory listings are needed to find what to trim.<br>
+ * The index is persisted in a journal file in the same directory, much like DiskLruCache does it. Every put, read and
+ * delete appends a line to the journal, and it is compacted when it contains too many redundant lines.
+ * When there is no journal yet, the index is built once from a directory listing.<br>
+ * All methods are threadsafe. Only {@link #load()}, {@link #flush()} and {@link #clear()} do disk io, call them on
+ * the index thread. They do the io without holding the lock, the other methods only do in memory lookups.
+ */
+class FileCacheIndex {
+    private static final String TAG = "FileCacheIndex";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String MAGIC = "clover.filecache";
+    private static final String VERSION = "1";
+
+    private static final String PUT = "P";
+    private static final String READ = "R";
+    private static final String DELETE = "D";
+
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final int JOURNAL_VALID = 0;
+    // Stopped at an invalid line, the lines before it are loaded
+    private static final int JOURNAL_DAMAGED = 1;
+    private static final int JOURNAL_INVALID = 2;
+
+    private final File directory;
+    private final File journalFile;
+    private final File journalFileTmp;
+
+    // Empty until loaded
+    private Entries entries = new Entries();
+    private boolean loaded = false;
+
+    // Journal lines not yet written to disk
+    private StringBuilder pending = new StringBuilder();
+    private int redundantOps;
+    // Write a compacted journal on the next flush, set when the journal on disk can't be appended to
+    private boolean rewriteJournal = false;
+
+    public FileCacheIndex(File directory) {
+        this.directory = directory;
+        journalFile = new File(directory, JOURNAL_FILE);
+        journalFileTmp = new File(directory, JOURNAL_FILE_TMP);
+    }
+
+    /**
+     * Read the journal, or build the index from the directory if there is no valid journal.<br>
+     * Until this is done the index is empty, {@link #touch(String)} and {@link #contains(String)} return false.
+     * Puts and removes done in the meantime are applied on top of the loaded index.
+     */
+    public void load() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+        }
+
+        Entries read = new Entries();
+        int journal = readJournal(read);
+        if (journal == JOURNAL_INVALID) {
+            Logger.i(TAG, "No valid journal, indexing the cache directory");
+            read = new Entries();
+            indexDirectory(read);
+        }
+
+        synchronized (this) {
+            // These ops are not in the journal yet, they are written by the flush
+            String[] lines = pending.toString().split("\n");
+            for (String line : lines) {
+                if (line.length() > 0) {
+                    read.apply(line);
+                }
+            }
+
+            entries = read;
+            redundantOps = Math.max(0, read.ops - read.sizes.size());
+            // Appending after an invalid line would join the next op with it, rewrite the journal without it
+            if (journal != JOURNAL_VALID) {
+                rewriteJournal = true;
+            }
+            loaded = true;
+        }
+
+        flush();
+    }
+
+    /**
+     * Mark the file as used.
+     *
+     * @param name name of the file
+     * @return true if the file is in the index
+     */
+    public synchronized boolean touch(String name) {
+        if (entries.sizes.get(name) != null) {
+            appendOp(READ, name, -1);
+            redundantOps++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.sizes.containsKey(name);
+    }
+
+    public synchronized void put(String name, long fileSize) {
+        if (entries.put(name, fileSize)) {
+            redundantOps++;
+        }
+        appendOp(PUT, name, fileSize);
+    }
+
+    public synchronized void remove(String name) {
+        if (entries.remove(name)) {
+            appendOp(DELETE, name, -1);
+            redundantOps += 2;
+        }
+    }
+
+    /**
+     * Remove all entries, and write an empty journal.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries = new Entries();
+            pending.setLength(0);
+            redundantOps = 0;
+            rewriteJournal = true;
+            loaded = true;
+        }
+
+        flush();
+    }
+
+    public synchronized long getSize() {
+        return entries.size;
+    }
+
+    public synchronized int getCount() {
+        return entries.sizes.size();
+    }
+
+    /**
+     * Remove the least recently used entries from the index until the size is at most {@code maxSize}.
+     * The most recently used entry is never removed.
+     *
+     * @return names of the removed entries, the caller deletes the files.
+     */
+    public synchronized List<String> trim(long maxSize) {
+        if (!loaded) {
+            return Collections.emptyList();
+        }
+
+        List<String> removed = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = entries.sizes.entrySet().iterator();
+        while (entries.size > maxSize && entries.sizes.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            entries.size -= eldest.getValue();
+            appendOp(DELETE, eldest.getKey(), -1);
+            redundantOps += 2;
+            removed.add(eldest.getKey());
+        }
+        return removed;
+    }
+
+    /**
+     * Write the pending journal lines to disk, compacting the journal if needed.
+     */
+    public void flush() {
+        String compacted = null;
+        String append = null;
+        synchronized (this) {
+            if (!loaded) {
+                // Written after the load
+                return;
+            }
+
+            if (rewriteJournal ||
+                    (redundantOps >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOps >= entries.sizes.size())) {
+                StringBuilder journal = new StringBuilder();
+                for (Map.Entry<String, Long> entry : entries.sizes.entrySet()) {
+                    journal.append(PUT).append(' ').append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+                }
+                compacted = journal.toString();
+                pending.setLength(0);
+                redundantOps = 0;
+                rewriteJournal = false;
+            } else if (pending.length() > 0) {
+                append = pending.toString();
+                pending.setLength(0);
+            }
+        }
+
+        boolean written = true;
+        if (compacted != null) {
+            written = writeCompactedJournal(compacted);
+        } else if (append != null) {
+            written = appendJournal(append);
+        }
+
+        if (!written) {
+            // The lines are lost, or only partly written. The next flush writes the whole index.
+            synchronized (this) {
+                pending.setLength(0);
+                rewriteJournal = true;
+            }
+        }
+    }
+
+    private void appendOp(String op, String name, long fileSize) {
+        pending.append(op).append(' ').append(name);
+        if (fileSize >= 0) {
+            pending.append(' ').append(fileSize);
+        }
+        pending.append('\n');
+    }
+
+    private int readJournal(Entries into) {
+        if (!journalFile.exists()) {
+            return JOURNAL_INVALID;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF8));
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                return JOURNAL_INVALID;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!into.apply(line)) {
+                    // Truncated by a crash while appending, the lines before are still good
+                    Logger.w(TAG, "Invalid journal line: " + line);
+                    return JOURNAL_DAMAGED;
+                }
+            }
+
+            return JOURNAL_VALID;
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading journal", e);
+            return JOURNAL_INVALID;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private void indexDirectory(Entries into) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+
+        // Oldest first, so that they get trimmed first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return lastModified[lhs] < lastModified[rhs] ? -1 : (lastModified[lhs] == lastModified[rhs] ? 0 : 1);
+            }
+        });
+
+        for (Integer index : order) {
+            File file = files[index];
+            String name = file.getName();
+            if (file.isFile() && !name.equals(JOURNAL_FILE) && !name.equals(JOURNAL_FILE_TMP)) {
+                into.put(name, file.length());
+            }
+        }
+    }
+
+    private boolean appendJournal(String lines) {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF8));
+            writer.write(lines);
+            writer.close();
+            writer = null;
+            return true;
+        } catch (IOException e) {
+            Logger.e(TAG, "Error appending to journal", e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private boolean writeCompactedJournal(String lines) {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTmp), UTF8));
+            writer.write(MAGIC + "\n" + VERSION + "\n");
+            writer.write(lines);
+            writer.close();
+            writer = null;
+
+            if (!journalFileTmp.renameTo(journalFile)) {
+                Logger.e(TAG, "Could not rename the compacted journal");
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(TAG, "Error writing journal", e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * The sizes of the files by name, and their total.
+     */
+    private static class Entries {
+        // Access ordered, the first entry is the least recently used one
+        private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(0, 0.75f, true);
+        private long size;
+        // Number of journal lines applied
+        private int ops;
+
+        /**
+         * @return true if the file was already in the index
+         */
+        private boolean put(String name, long fileSize) {
+            Long previous = sizes.put(name, fileSize);
+            if (previous != null) {
+                size -= previous;
+            }
+            size += fileSize;
+            return previous != null;
+        }
+
+        /**
+         * @return true if the file was in the index
+         */
+        private boolean remove(String name) {
+            Long previous = sizes.remove(name);
+            if (previous != null) {
+                size -= previous;
+            }
+            return previous != null;
+        }
+
+        /**
+         * Apply a line of the journal.
+         *
+         * @return false if the line is invalid
+         */
+        private boolean apply(String line) {
+            String[] parts = line.split(" ");
+            if (parts.length == 3 && parts[0].equals(PUT)) {
+                try {
+                    put(parts[1], Long.parseLong(parts[2]));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else if (parts.length == 2 && parts[0].equals(READ)) {
+                sizes.get(parts[1]);
+            } else if (parts.length == 2 && parts[0].equals(DELETE)) {
+                remove(parts[1]);
+            } else if (line.length() > 0) {
+                return false;
+            }
+            ops++;
+            return true;
+        }
+    }
+}
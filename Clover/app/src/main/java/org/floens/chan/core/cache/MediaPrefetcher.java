@@ -0,0 +1,170 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import com.android.volley.RequestQueue;
+
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.net.PrefetchRequest;
+import org.floens.chan.utils.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Downloads images into the {@link FileCache} before they are shown, and thumbnails into the Volley cache.<br>
+ * Full images are downloaded one at a time, so that a download thread stays free for the image that is on screen.
+ * The images still to prefetch are limited to a byte budget, and a prefetch that is no longer wanted is cancelled
+ * right away. Downloads of the same file by the image viewer are shared, and not cancelled with the prefetch.<br>
+ * Use on the UI thread only.
+ */
+public class MediaPrefetcher {
+    private static final String TAG = "MediaPrefetcher";
+
+    private final FileCache fileCache;
+    private final RequestQueue requestQueue;
+    private final long byteBudget;
+
+    private final List<PostImage> queue = new ArrayList<>();
+    private final Set<String> failed = new HashSet<>();
+    private Prefetch current;
+
+    private final Set<String> requestedThumbnails = new HashSet<>();
+
+    public MediaPrefetcher(FileCache fileCache, RequestQueue requestQueue, long byteBudget) {
+        this.fileCache = fileCache;
+        this.requestQueue = requestQueue;
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Replace the images to prefetch. Images that are cached, or don't fit in the byte budget, are skipped.
+     * The running prefetch is cancelled when its image is not in the list anymore.
+     *
+     * @param images images to prefetch, the most wanted first
+     */
+    public void prefetchImages(List<PostImage> images) {
+        queue.clear();
+        boolean currentWanted = false;
+        long budget = byteBudget;
+        for (PostImage image : images) {
+            if (current != null && current.postImage == image) {
+                currentWanted = true;
+                budget -= image.size;
+            } else if (image.size <= budget && !failed.contains(image.imageUrl) && !fileCache.exists(image.imageUrl)) {
+                queue.add(image);
+                budget -= image.size;
+            }
+        }
+
+        if (current != null && !currentWanted) {
+            Logger.d(TAG, "Cancelling prefetch of " + current.postImage.imageUrl);
+            current.cancel();
+            current = null;
+        }
+
+        startNext();
+    }
+
+    /**
+     * Put the thumbnails in the Volley disk cache. They are requested once for as long as this prefetcher is used.
+     */
+    public void prefetchThumbnails(List<PostImage> images) {
+        for (PostImage image : images) {
+            if (requestedThumbnails.add(image.thumbnailUrl)) {
+                PrefetchRequest request = new PrefetchRequest(image.thumbnailUrl);
+                request.setTag(this);
+                requestQueue.add(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel all prefetches, call when the images are not shown anymore.
+     */
+    public void cancel() {
+        queue.clear();
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+
+        requestQueue.cancelAll(this);
+        requestedThumbnails.clear();
+    }
+
+    private void startNext() {
+        while (current == null && !queue.isEmpty()) {
+            PostImage image = queue.remove(0);
+            // Checked again, the image viewer may have loaded it in the meantime
+            if (!fileCache.exists(image.imageUrl)) {
+                Prefetch prefetch = new Prefetch(image);
+                current = prefetch;
+                prefetch.start();
+            }
+        }
+    }
+
+    private class Prefetch implements FileCache.DownloadedCallback {
+        private final PostImage postImage;
+        private FileCache.FileCacheDownloader downloader;
+        private boolean done = false;
+
+        public Prefetch(PostImage postImage) {
+            this.postImage = postImage;
+        }
+
+        private void start() {
+            Logger.d(TAG, "Prefetching " + postImage.imageUrl);
+            downloader = fileCache.downloadFile(postImage.imageUrl, this);
+        }
+
+        private void cancel() {
+            if (!done && downloader != null) {
+                downloader.cancel(this);
+            }
+        }
+
+        @Override
+        public void onProgress(long downloaded, long total, boolean done) {
+        }
+
+        @Override
+        public void onSuccess(File file) {
+            onDone();
+        }
+
+        @Override
+        public void onFail(boolean notFound) {
+            failed.add(postImage.imageUrl);
+            onDone();
+        }
+
+        private void onDone() {
+            done = true;
+            // Called synchronously from start() when the file was already cached
+            if (current == this) {
+                current = null;
+                startNext();
+            }
+        }
+    }
+}
@@ -21,8 +21,10 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.table.TableUtils;
 
 import org.floens.chan.core.model.History;
+import org.floens.chan.core.model.Loadable;
 import org.floens.chan.utils.Time;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -42,8 +44,12 @@ public class DatabaseHistoryManager {
         this.databaseLoadableManager = databaseLoadableManager;
     }
 
+    /**
+     * Add the history, or update the date of the history of its loadable. Written behind, repeated adds of the same
+     * thread are written once.
+     */
     public void add(History history) {
-        databaseManager.runTaskSync(addHistory(history));
+        databaseManager.runWrite("history/" + history.loadable.id, addHistory(history));
     }
 
     public Callable<Void> load() {
@@ -57,15 +63,26 @@ public class DatabaseHistoryManager {
         };
     }
 
-    public Callable<List<History>> getHistory() {
+    /**
+     * Get a page of the history, newest first. The loadables of the page are loaded with one query.
+     *
+     * @param offset number of histories to skip
+     * @param limit  maximum number of histories to get
+     */
+    public Callable<List<History>> getHistory(final long offset, final long limit) {
         return new Callable<List<History>>() {
             @Override
             public List<History> call() throws Exception {
                 QueryBuilder<History, Integer> historyQuery = helper.historyDao.queryBuilder();
-                List<History> date = historyQuery.orderBy("date", false).query();
+                List<History> date = historyQuery.orderBy("date", false).offset(offset).limit(limit).query();
+
+                List<Loadable> loadables = new ArrayList<>(date.size());
+                for (int i = 0; i < date.size(); i++) {
+                    loadables.add(date.get(i).loadable);
+                }
+                loadables = databaseLoadableManager.refreshForeign(loadables);
                 for (int i = 0; i < date.size(); i++) {
-                    History history = date.get(i);
-                    history.loadable = databaseLoadableManager.refreshForeign(history.loadable);
+                    date.get(i).loadable = loadables.get(i);
                 }
                 return date;
             }
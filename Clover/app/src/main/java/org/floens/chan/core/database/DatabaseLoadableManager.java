@@ -24,6 +24,7 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
+import org.floens.chan.utils.collections.IntObjectMap;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -35,10 +36,16 @@ import java.util.concurrent.Callable;
 public class DatabaseLoadableManager {
     private static final String TAG = "DatabaseLoadableManager";
 
+    // SQLite allows 999 variables in a query
+    private static final int QUERY_IDS_MAX = 500;
+
     private DatabaseManager databaseManager;
     private DatabaseHelper helper;
 
-    private Map<Loadable, Loadable> cachedLoadables = new HashMap<>();
+    // Synchronize on this map, the cache is read on the calling thread of get()
+    private final Map<Loadable, Loadable> cachedLoadables = new HashMap<>();
+    // The same loadables by id, for the loadables of foreign fields. Guarded by cachedLoadables
+    private final IntObjectMap<Loadable> cachedLoadablesById = new IntObjectMap<>();
 
     public DatabaseLoadableManager(DatabaseManager databaseManager, DatabaseHelper helper) {
         this.databaseManager = databaseManager;
@@ -54,10 +61,12 @@ public class DatabaseLoadableManager {
             @Override
             public Void call() throws Exception {
                 List<Loadable> toFlush = new ArrayList<>();
-                for (Loadable loadable : cachedLoadables.values()) {
-                    if (loadable.dirty) {
-                        loadable.dirty = false;
-                        toFlush.add(loadable);
+                synchronized (cachedLoadables) {
+                    for (Loadable loadable : cachedLoadables.values()) {
+                        if (loadable.dirty) {
+                            loadable.dirty = false;
+                            toFlush.add(loadable);
+                        }
                     }
                 }
 
@@ -81,6 +90,7 @@ public class DatabaseLoadableManager {
      * need to go through this method to correctly get a loadable if it already existed in the db.
      * <p>It will search the database for existing loadables of the mode is THREAD, and return one of those if there is
      * else it will create the loadable in the database and return the given loadable.
+     * <p>Loadables that were gotten before are returned from memory, without waiting on the database thread.
      *
      * @param loadable Loadable to search from that was not yet gotten from the db.
      * @return a loadable ready to use.
@@ -92,6 +102,14 @@ public class DatabaseLoadableManager {
 
         // We only cache THREAD loadables in the db
         if (loadable.isThreadMode()) {
+            Loadable cachedLoadable;
+            synchronized (cachedLoadables) {
+                cachedLoadable = cachedLoadables.get(loadable);
+            }
+            if (cachedLoadable != null) {
+                return cachedLoadable;
+            }
+
             long start = Time.startTiming();
             Loadable result = databaseManager.runTaskSync(getLoadable(loadable));
             Time.endTiming("get loadable from db " + loadable.board, start);
@@ -115,18 +133,79 @@ public class DatabaseLoadableManager {
         }
 
         // If the loadable was already loaded in the cache, return that entry
-        for (Loadable key : cachedLoadables.keySet()) {
-            if (key.id == loadable.id) {
-                return key;
+        synchronized (cachedLoadables) {
+            Loadable cachedLoadable = cachedLoadablesById.get(loadable.id);
+            if (cachedLoadable != null) {
+                return cachedLoadable;
             }
         }
 
         // Add it to the cache, refresh contents
         helper.loadableDao.refresh(loadable);
-        cachedLoadables.put(loadable, loadable);
+        synchronized (cachedLoadables) {
+            cache(loadable);
+        }
         return loadable;
     }
 
+    /**
+     * {@link #refreshForeign(Loadable)} for a list of loadables. The loadables that are not in the cache are loaded
+     * with one query, instead of a query for each loadable.
+     *
+     * @param loadables Loadables that only have their id loaded
+     * @return the loadables ready to use, in the same order.
+     * @throws SQLException
+     */
+    public List<Loadable> refreshForeign(final List<Loadable> loadables) throws SQLException {
+        List<Integer> missingIds = new ArrayList<>();
+        synchronized (cachedLoadables) {
+            for (int i = 0; i < loadables.size(); i++) {
+                Loadable loadable = loadables.get(i);
+                if (loadable.id == 0) {
+                    throw new IllegalArgumentException("This only works loadables that have their id loaded");
+                }
+
+                if (!cachedLoadablesById.containsKey(loadable.id)) {
+                    missingIds.add(loadable.id);
+                }
+            }
+        }
+
+        for (int i = 0; i < missingIds.size(); i += QUERY_IDS_MAX) {
+            List<Integer> ids = missingIds.subList(i, Math.min(i + QUERY_IDS_MAX, missingIds.size()));
+            List<Loadable> results = helper.loadableDao.queryBuilder().where().in("id", ids).query();
+            synchronized (cachedLoadables) {
+                for (int j = 0; j < results.size(); j++) {
+                    Loadable result = results.get(j);
+                    // Another thread may have cached it in the meantime
+                    if (!cachedLoadablesById.containsKey(result.id)) {
+                        cache(result);
+                    }
+                }
+            }
+        }
+
+        List<Loadable> refreshed = new ArrayList<>(loadables.size());
+        synchronized (cachedLoadables) {
+            for (int i = 0; i < loadables.size(); i++) {
+                Loadable loadable = loadables.get(i);
+                Loadable cachedLoadable = cachedLoadablesById.get(loadable.id);
+                if (cachedLoadable == null) {
+                    Logger.w(TAG, "Foreign loadable " + loadable.id + " not found");
+                    cachedLoadable = loadable;
+                }
+                refreshed.add(cachedLoadable);
+            }
+        }
+        return refreshed;
+    }
+
+    // Call with cachedLoadables locked
+    private void cache(Loadable loadable) {
+        cachedLoadables.put(loadable, loadable);
+        cachedLoadablesById.put(loadable.id, loadable);
+    }
+
     private Callable<Loadable> getLoadable(final Loadable loadable) {
         if (!loadable.isThreadMode()) {
             throw new IllegalArgumentException("getLoadable can only be used for thread loadables");
@@ -163,7 +242,9 @@ public class DatabaseLoadableManager {
                         Log.d(TAG, "Loadable found in db");
                     }
 
-                    cachedLoadables.put(result, result);
+                    synchronized (cachedLoadables) {
+                        cache(result);
+                    }
                     return result;
                 }
             }
@@ -26,15 +26,16 @@ import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.table.TableUtils;
 
 import org.floens.chan.Chan;
+import org.floens.chan.core.metrics.Metrics;
 import org.floens.chan.core.model.Board;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.model.ThreadHide;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
+import org.floens.chan.utils.collections.IntSet;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -54,9 +55,10 @@ public class DatabaseManager {
 
     private final ExecutorService backgroundExecutor;
     private final DatabaseHelper helper;
+    private final DatabaseWriteQueue writeQueue;
 
     private final List<ThreadHide> threadHides = new ArrayList<>();
-    private final HashSet<Integer> threadHidesIds = new HashSet<>();
+    private final IntSet threadHidesIds = new IntSet();
 
     private final DatabasePinManager databasePinManager;
     private final DatabaseLoadableManager databaseLoadableManager;
@@ -68,6 +70,7 @@ public class DatabaseManager {
         backgroundExecutor = Executors.newSingleThreadExecutor();
 
         helper = new DatabaseHelper(context);
+        writeQueue = new DatabaseWriteQueue(helper, backgroundExecutor);
         databaseLoadableManager = new DatabaseLoadableManager(this, helper);
         databasePinManager = new DatabasePinManager(this, helper, databaseLoadableManager);
         databaseHistoryManager = new DatabaseHistoryManager(this, helper, databaseLoadableManager);
@@ -101,6 +104,7 @@ public class DatabaseManager {
     public void onEvent(Chan.ForegroundChangedMessage message) {
         if (!message.inForeground) {
             runTask(databaseLoadableManager.flush());
+            writeQueue.flush();
         }
     }
 
@@ -233,6 +237,7 @@ public class DatabaseManager {
             o += "ThreadHide rows: " + helper.threadHideDao.countOf() + "\n";
             o += "History rows: " + helper.historyDao.countOf() + "\n";
             o += "Filter rows: " + helper.filterDao.countOf() + "\n";
+            o += writeQueue.getSummary();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -276,6 +281,18 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Queue a write to run later in a batch with other writes, see {@link DatabaseWriteQueue}. Returns immediately.
+     * Tasks run after this call see the write.
+     *
+     * @param key   writes with an equal key replace each other while pending, use for updates of the same row.
+     *              Null to never coalesce the write, for creates and deletes.
+     * @param write the write to run on the database thread
+     */
+    public void runWrite(Object key, Callable<?> write) {
+        writeQueue.write(key, write);
+    }
+
     public <T> void runTask(final Callable<T> taskCallable) {
         runTask(taskCallable, null);
     }
@@ -293,11 +310,15 @@ public class DatabaseManager {
     }
 
     private <T> Future<T> executeTask(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
+        // Pending writes go first, so that the task sees them
+        writeQueue.flush();
         return backgroundExecutor.submit(new Callable<T>() {
             @Override
             public T call() {
                 try {
+                    long start = Time.startTiming();
                     final T result = TransactionManager.callInTransaction(helper.getConnectionSource(), taskCallable);
+                    Metrics.DATABASE_TASK.recordSince(start);
                     if (taskResult != null) {
                         new Handler(Looper.getMainLooper()).post(new Runnable() {
                             @Override
@@ -17,8 +17,10 @@
  */
 package org.floens.chan.core.database;
 
+import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Pin;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -89,9 +91,14 @@ public class DatabasePinManager {
             @Override
             public List<Pin> call() throws Exception {
                 List<Pin> list = helper.pinDao.queryForAll();
+
+                List<Loadable> loadables = new ArrayList<>(list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    loadables.add(list.get(i).loadable);
+                }
+                loadables = databaseLoadableManager.refreshForeign(loadables);
                 for (int i = 0; i < list.size(); i++) {
-                    Pin p = list.get(i);
-                    p.loadable = databaseLoadableManager.refreshForeign(p.loadable);
+                    list.get(i).loadable = loadables.get(i);
                 }
                 return list;
             }
@@ -22,11 +22,10 @@ import com.j256.ormlite.table.TableUtils;
 
 import org.floens.chan.core.model.SavedReply;
 import org.floens.chan.utils.Time;
+import org.floens.chan.utils.collections.IntObjectMap;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 
 public class DatabaseSavedReplyManager {
@@ -38,7 +37,7 @@ public class DatabaseSavedReplyManager {
     private DatabaseManager databaseManager;
     private DatabaseHelper helper;
 
-    private final Map<Integer, List<SavedReply>> savedRepliesByNo = new HashMap<>();
+    private final IntObjectMap<List<SavedReply>> savedRepliesByNo = new IntObjectMap<>();
 
     public DatabaseSavedReplyManager(DatabaseManager databaseManager, DatabaseHelper helper) {
         this.databaseManager = databaseManager;
@@ -48,18 +47,16 @@ public class DatabaseSavedReplyManager {
     // optimized and threadsafe
     public boolean isSaved(String board, int no) {
         synchronized (savedRepliesByNo) {
-            if (savedRepliesByNo.containsKey(no)) {
-                List<SavedReply> items = savedRepliesByNo.get(no);
+            List<SavedReply> items = savedRepliesByNo.get(no);
+            if (items != null) {
                 for (int i = 0; i < items.size(); i++) {
                     SavedReply item = items.get(i);
                     if (item.board.equals(board)) {
                         return true;
                     }
                 }
-                return false;
-            } else {
-                return false;
             }
+            return false;
         }
     }
 
@@ -75,13 +72,7 @@ public class DatabaseSavedReplyManager {
                     savedRepliesByNo.clear();
                     for (int i = 0; i < all.size(); i++) {
                         SavedReply savedReply = all.get(i);
-                        if (savedRepliesByNo.containsKey(savedReply.no)) {
-                            savedRepliesByNo.get(savedReply.no).add(savedReply);
-                        } else {
-                            List<SavedReply> items = new ArrayList<>();
-                            items.add(savedReply);
-                            savedRepliesByNo.put(savedReply.no, items);
-                        }
+                        addSavedReply(savedReply);
                     }
                 }
                 return null;
@@ -111,13 +102,7 @@ public class DatabaseSavedReplyManager {
             public SavedReply call() throws Exception {
                 helper.savedDao.create(savedReply);
                 synchronized (savedRepliesByNo) {
-                    if (savedRepliesByNo.containsKey(savedReply.no)) {
-                        savedRepliesByNo.get(savedReply.no).add(savedReply);
-                    } else {
-                        List<SavedReply> items = new ArrayList<>();
-                        items.add(savedReply);
-                        savedRepliesByNo.put(savedReply.no, items);
-                    }
+                    addSavedReply(savedReply);
                 }
                 return savedReply;
             }
@@ -134,4 +119,14 @@ public class DatabaseSavedReplyManager {
             }
         };
     }
+
+    // Call with savedRepliesByNo locked
+    private void addSavedReply(SavedReply savedReply) {
+        List<SavedReply> items = savedRepliesByNo.get(savedReply.no);
+        if (items == null) {
+            items = new ArrayList<>(1);
+            savedRepliesByNo.put(savedReply.no, items);
+        }
+        items.add(savedReply);
+    }
 }
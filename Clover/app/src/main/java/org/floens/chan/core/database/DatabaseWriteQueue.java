@@ -0,0 +1,165 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.j256.ormlite.misc.TransactionManager;
+
+import org.floens.chan.core.metrics.Metrics;
+import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Write-behind queue of the {@link DatabaseManager}. Writes are collected and run on the database thread in one
+ * transaction per batch. A batch is flushed {@link #FLUSH_DELAY} ms after its first write, or when it has
+ * {@link #MAX_BATCH_SIZE} writes.
+ * <p>
+ * Writes with the same key are coalesced: a later write removes the pending one and is queued at the end, so a row
+ * that is updated many times is written once with its latest state, after everything queued before it. Writes without
+ * a key are never coalesced, and the order of the writes is kept, so a create always runs before the updates queued
+ * after it.
+ * <p>
+ * The database manager flushes the queue before every task it runs, so reads see all writes queued before them.
+ * Threadsafe.
+ */
+class DatabaseWriteQueue {
+    private static final String TAG = "DatabaseWriteQueue";
+
+    private static final long FLUSH_DELAY = 1000;
+    private static final int MAX_BATCH_SIZE = 50;
+
+    private final DatabaseHelper helper;
+    private final ExecutorService executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Keys of writes that can't be coalesced are unique objects
+    private final Map<Object, Callable<?>> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    private long batches;
+    private long writes;
+    private long coalesced;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    DatabaseWriteQueue(DatabaseHelper helper, ExecutorService executor) {
+        this.helper = helper;
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a write, returns immediately.
+     *
+     * @param key   writes with equal keys replace each other while pending, null to never coalesce this write
+     * @param write the write, run on the database thread
+     */
+    void write(Object key, Callable<?> write) {
+        boolean flushNow;
+        synchronized (this) {
+            if (key == null) {
+                key = new Object();
+            }
+
+            // Removed first so that the write moves to the end, it can depend on the writes queued since the old one
+            if (pending.remove(key) != null) {
+                coalesced++;
+                Metrics.DATABASE_WRITE_COALESCED.increment();
+            }
+            pending.put(key, write);
+
+            flushNow = pending.size() >= MAX_BATCH_SIZE;
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flushRunnable, FLUSH_DELAY);
+            }
+        }
+
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Submit the pending writes to the database thread as one batch. The batch runs before any task submitted to the
+     * executor after this call.
+     */
+    synchronized void flush() {
+        if (flushScheduled) {
+            flushScheduled = false;
+            handler.removeCallbacks(flushRunnable);
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final List<Callable<?>> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        batches++;
+        writes += batch.size();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runBatch(batch);
+            }
+        });
+    }
+
+    synchronized String getSummary() {
+        return "Write queue: " + pending.size() + " pending, " + writes + " written in " + batches + " batches, " +
+                coalesced + " coalesced\n";
+    }
+
+    private void runBatch(final List<Callable<?>> batch) {
+        long start = Time.startTiming();
+        try {
+            TransactionManager.callInTransaction(helper.getConnectionSource(), new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < batch.size(); i++) {
+                        // A failing write doesn't roll back the others in the batch
+                        try {
+                            batch.get(i).call();
+                        } catch (Exception e) {
+                            Logger.e(TAG, "Error running write", e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            Logger.e(TAG, "Error running write batch of " + batch.size(), e);
+        }
+        Metrics.DATABASE_TASK.recordSince(start);
+    }
+}
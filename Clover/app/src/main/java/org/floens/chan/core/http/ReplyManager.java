@@ -21,13 +21,12 @@ import android.content.Context;
 
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Reply;
+import org.floens.chan.core.net.SharedHttpClient;
 
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 
 /**
@@ -38,19 +37,14 @@ public class ReplyManager {
 
     private final Context context;
     private String userAgent;
-    private OkHttpClient client;
+    private final SharedHttpClient httpClient;
 
     private Map<Loadable, Reply> drafts = new HashMap<>();
 
-    public ReplyManager(Context context, String userAgent) {
+    public ReplyManager(Context context, String userAgent, SharedHttpClient httpClient) {
         this.context = context;
         this.userAgent = userAgent;
-
-        client = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+        this.httpClient = httpClient;
     }
 
     public Reply getReply(Loadable loadable) {
@@ -90,7 +84,7 @@ public class ReplyManager {
         requestBuilder.header("User-Agent", userAgent);
         Request request = requestBuilder.build();
 
-        client.newCall(request).enqueue(httpCall);
+        httpClient.get(TIMEOUT).newCall(request).enqueue(httpCall);
     }
 
     public interface HttpCallback<T extends HttpCall> {
@@ -0,0 +1,227 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton that finds all filter words in a text in a single case insensitive scan.<br>
+ * A word can be bounded, it then only matches when it is not part of a larger word, like {@code \bword\b}.<br>
+ * Immutable after building, and threadsafe to match with.
+ */
+class FilterAutomaton {
+    // Transitions of each node, the keys are sorted to binary search them
+    private final char[][] keys;
+    private final int[][] children;
+    private final int[] fail;
+    // Word indexes ending in each node, including the ones of the suffixes
+    private final int[][] outputs;
+
+    private final int[] wordFilter;
+    private final int[] wordLength;
+    private final boolean[] wordBounded;
+
+    private FilterAutomaton(char[][] keys, int[][] children, int[] fail, int[][] outputs,
+                            int[] wordFilter, int[] wordLength, boolean[] wordBounded) {
+        this.keys = keys;
+        this.children = children;
+        this.fail = fail;
+        this.outputs = outputs;
+        this.wordFilter = wordFilter;
+        this.wordLength = wordLength;
+        this.wordBounded = wordBounded;
+    }
+
+    public boolean isEmpty() {
+        return wordFilter.length == 0;
+    }
+
+    /**
+     * Scan the text and set {@code matched[filter]} for every filter that has a word in the text.
+     *
+     * @param text    text to scan
+     * @param enabled filters to look for, indexed by filter
+     * @param matched output, indexed by filter
+     */
+    public void match(String text, boolean[] enabled, boolean[] matched) {
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+
+            int next;
+            while ((next = child(keys, children, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+
+            int[] output = outputs[state];
+            for (int j = 0; j < output.length; j++) {
+                int word = output[j];
+                int filter = wordFilter[word];
+                if (!enabled[filter] || matched[filter]) {
+                    continue;
+                }
+
+                if (wordBounded[word]) {
+                    int start = i - wordLength[word] + 1;
+                    if ((start > 0 && isWordChar(text.charAt(start - 1))) ||
+                            (i + 1 < length && isWordChar(text.charAt(i + 1)))) {
+                        continue;
+                    }
+                }
+
+                matched[filter] = true;
+            }
+        }
+    }
+
+    private static int child(char[][] keys, int[][] children, int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : children[state][index];
+    }
+
+    /**
+     * Same characters as {@code \w}, used for {@code \b}.
+     */
+    static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    static class Builder {
+        private final List<Map<Character, Integer>> nodes = new ArrayList<>();
+        private final List<List<Integer>> nodeWords = new ArrayList<>();
+
+        private final List<Integer> wordFilter = new ArrayList<>();
+        private final List<Integer> wordLength = new ArrayList<>();
+        private final List<Boolean> wordBounded = new ArrayList<>();
+
+        Builder() {
+            addNode();
+        }
+
+        /**
+         * Add a word to look for.
+         *
+         * @param word    the word, matched case insensitive
+         * @param filter  index of the filter the word belongs to
+         * @param bounded only match the word when it's not part of a larger word
+         */
+        void add(String word, int filter, boolean bounded) {
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = Character.toLowerCase(word.charAt(i));
+                Integer next = nodes.get(state).get(c);
+                if (next == null) {
+                    next = addNode();
+                    nodes.get(state).put(c, next);
+                }
+                state = next;
+            }
+
+            nodeWords.get(state).add(wordFilter.size());
+            wordFilter.add(filter);
+            wordLength.add(word.length());
+            wordBounded.add(bounded);
+        }
+
+        FilterAutomaton build() {
+            int size = nodes.size();
+            char[][] keys = new char[size][];
+            int[][] children = new int[size][];
+            int[] fail = new int[size];
+            int[][] outputs = new int[size][];
+
+            for (int i = 0; i < size; i++) {
+                // TreeMap, so the keys are sorted
+                Map<Character, Integer> transitions = nodes.get(i);
+                keys[i] = new char[transitions.size()];
+                children[i] = new int[transitions.size()];
+                int j = 0;
+                for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                    keys[i][j] = entry.getKey();
+                    children[i][j] = entry.getValue();
+                    j++;
+                }
+            }
+
+            // Breadth first, so that the fail node of a node is always done before the node itself
+            outputs[0] = toArray(nodeWords.get(0), null);
+            Queue<Integer> queue = new LinkedList<>();
+            for (int depthOne : children[0]) {
+                fail[depthOne] = 0;
+                queue.add(depthOne);
+            }
+
+            while (!queue.isEmpty()) {
+                int node = queue.remove();
+                outputs[node] = toArray(nodeWords.get(node), outputs[fail[node]]);
+
+                for (int j = 0; j < keys[node].length; j++) {
+                    char c = keys[node][j];
+                    int target = children[node][j];
+
+                    int state = fail[node];
+                    int next;
+                    while ((next = child(keys, children, state, c)) < 0 && state != 0) {
+                        state = fail[state];
+                    }
+                    fail[target] = next < 0 ? 0 : next;
+
+                    queue.add(target);
+                }
+            }
+
+            int words = wordFilter.size();
+            int[] filters = new int[words];
+            int[] lengths = new int[words];
+            boolean[] bounded = new boolean[words];
+            for (int i = 0; i < words; i++) {
+                filters[i] = wordFilter.get(i);
+                lengths[i] = wordLength.get(i);
+                bounded[i] = wordBounded.get(i);
+            }
+
+            return new FilterAutomaton(keys, children, fail, outputs, filters, lengths, bounded);
+        }
+
+        private int addNode() {
+            nodes.add(new TreeMap<Character, Integer>());
+            nodeWords.add(new ArrayList<Integer>(1));
+            return nodes.size() - 1;
+        }
+
+        private static int[] toArray(List<Integer> own, int[] inherited) {
+            int inheritedLength = inherited == null ? 0 : inherited.length;
+            int[] array = new int[own.size() + inheritedLength];
+            for (int i = 0; i < own.size(); i++) {
+                array[i] = own.get(i);
+            }
+            if (inherited != null) {
+                System.arraycopy(inherited, 0, array, own.size(), inheritedLength);
+            }
+            return array;
+        }
+    }
+}
@@ -24,7 +24,6 @@ import org.floens.chan.core.database.DatabaseFilterManager;
 import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.model.Board;
 import org.floens.chan.core.model.Filter;
-import org.floens.chan.core.model.Post;
 import org.floens.chan.utils.Logger;
 
 import java.util.ArrayList;
@@ -76,58 +75,68 @@ public class FilterEngine {
 
     private List<Filter> filters;
     private final List<Filter> enabledFilters = new ArrayList<>();
+    private volatile FilterSet filterSet;
 
     private FilterEngine() {
         databaseManager = Chan.getDatabaseManager();
         databaseFilterManager = databaseManager.getDatabaseFilterManager();
+        filters = databaseManager.runTaskSync(databaseFilterManager.getFilters());
         update();
     }
 
+    // The filters are kept in memory, the database is written behind
     public void deleteFilter(Filter filter) {
-        databaseManager.runTaskSync(databaseFilterManager.deleteFilter(filter));
+        int index = indexOfFilter(filter);
+        if (index >= 0) {
+            filters.remove(index);
+        }
+        databaseManager.runWrite(null, databaseFilterManager.deleteFilter(filter));
         update();
     }
 
     public void createOrUpdateFilter(Filter filter) {
-        if (filter.id == 0) {
-            databaseManager.runTaskSync(databaseFilterManager.createFilter(filter));
+        int index = indexOfFilter(filter);
+        if (index < 0) {
+            filters.add(filter);
+            databaseManager.runWrite(null, databaseFilterManager.createFilter(filter));
         } else {
-            databaseManager.runTaskSync(databaseFilterManager.updateFilter(filter));
+            filters.set(index, filter);
+            databaseManager.runWrite(filter, databaseFilterManager.updateFilter(filter));
         }
         update();
     }
 
+    /**
+     * All filters, also the disabled ones.
+     *
+     * @return a copy of the list of filters
+     */
+    public List<Filter> getAllFilters() {
+        return new ArrayList<>(filters);
+    }
+
     public List<Filter> getEnabledFilters() {
         return enabledFilters;
     }
 
+    /**
+     * The enabled filters compiled for matching, replaced with a new instance when the filters change.
+     *
+     * @return the current compiled filters
+     */
     // threadsafe
-    public boolean matches(Filter filter, Post post) {
-        if ((filter.type & FilterType.TRIPCODE.flag) != 0 && matches(filter, FilterType.TRIPCODE.isRegex, post.tripcode, false)) {
-            return true;
-        }
-
-        if ((filter.type & FilterType.NAME.flag) != 0 && matches(filter, FilterType.NAME.isRegex, post.name, false)) {
-            return true;
-        }
-
-        if ((filter.type & FilterType.COMMENT.flag) != 0 && matches(filter, FilterType.COMMENT.isRegex, post.rawComment, false)) {
-            return true;
-        }
-
-        if ((filter.type & FilterType.ID.flag) != 0 && matches(filter, FilterType.ID.isRegex, post.id, false)) {
-            return true;
-        }
-
-        if ((filter.type & FilterType.SUBJECT.flag) != 0 && matches(filter, FilterType.SUBJECT.isRegex, post.subject, false)) {
-            return true;
-        }
-
-        if ((filter.type & FilterType.FILENAME.flag) != 0 && matches(filter, FilterType.FILENAME.isRegex, post.filename, false)) {
-            return true;
-        }
+    public FilterSet getFilterSet() {
+        return filterSet;
+    }
 
-        return false;
+    /**
+     * Compile filters into a set without making it the current set, for the benchmarks.
+     *
+     * @param filters enabled filters to compile
+     * @return the compiled filters
+     */
+    public FilterSet createFilterSet(List<Filter> filters) {
+        return new FilterSet(this, filters);
     }
 
     // threadsafe
@@ -252,8 +261,18 @@ public class FilterEngine {
         return filterFilthyPattern.matcher(filthy).replaceAll("\\\\$1"); // Escape regex special characters with a \
     }
 
+    // A filter that was created but not yet written has no id yet, find those by identity
+    private int indexOfFilter(Filter filter) {
+        for (int i = 0; i < filters.size(); i++) {
+            Filter other = filters.get(i);
+            if (other == filter || (filter.id != 0 && other.id == filter.id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private void update() {
-        filters = databaseManager.runTaskSync(databaseFilterManager.getFilters());
         List<Filter> enabled = new ArrayList<>();
         for (Filter filter : filters) {
             if (filter.enabled) {
@@ -263,5 +282,7 @@ public class FilterEngine {
 
         enabledFilters.clear();
         enabledFilters.addAll(enabled);
+
+        filterSet = new FilterSet(this, enabled);
     }
 }
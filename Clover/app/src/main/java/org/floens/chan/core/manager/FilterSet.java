@@ -0,0 +1,284 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import android.text.TextUtils;
+
+import org.floens.chan.core.model.Filter;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The enabled filters compiled for matching posts, created by {@link FilterEngine} each time the filters change.<br>
+ * Plain word and "exact sentence" filters are merged into one {@link FilterAutomaton} per field, exact matches on
+ * tripcodes, names and ids are looked up in a map, and only /regex/ filters, or words with wildcards, are run as a
+ * separate regex.<br>
+ * Immutable, and threadsafe without locking.
+ */
+public class FilterSet {
+    private static final String TAG = "FilterSet";
+
+    private static final FilterType[] TYPES = FilterType.values();
+
+    private final Filter[] filters;
+    private final FilterEngine.FilterAction[] actions;
+
+    // Indexed by FilterType ordinal, the non-null entries depend on FilterType.isRegex
+    private final FilterAutomaton[] automatons = new FilterAutomaton[TYPES.length];
+    private final int[][] regexFilters = new int[TYPES.length][];
+    private final Pattern[][] regexPatterns = new Pattern[TYPES.length][];
+    private final List<Map<String, int[]>> exactFilters = new ArrayList<>(TYPES.length);
+
+    /*package*/ FilterSet(FilterEngine filterEngine, List<Filter> enabledFilters) {
+        int size = enabledFilters.size();
+        filters = new Filter[size];
+        actions = new FilterEngine.FilterAction[size];
+        for (int i = 0; i < size; i++) {
+            // copy the filter because it will get used on other threads
+            filters[i] = enabledFilters.get(i).copy();
+            actions[i] = FilterEngine.FilterAction.forId(filters[i].action);
+        }
+
+        for (FilterType type : TYPES) {
+            if (type.isRegex) {
+                compileRegexType(filterEngine, type);
+                exactFilters.add(null);
+            } else {
+                exactFilters.add(compileExactType(type));
+            }
+        }
+    }
+
+    private void compileRegexType(FilterEngine filterEngine, FilterType type) {
+        FilterAutomaton.Builder builder = new FilterAutomaton.Builder();
+        List<Integer> regexIndexes = new ArrayList<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (int i = 0; i < filters.length; i++) {
+            Filter filter = filters[i];
+            if (!filter.hasFilter(type)) {
+                continue;
+            }
+
+            if (!addToAutomaton(builder, filter.pattern, i)) {
+                Pattern pattern = filterEngine.compile(filter.pattern);
+                if (pattern != null) {
+                    regexIndexes.add(i);
+                    patterns.add(pattern);
+                } else {
+                    Logger.e(TAG, "Invalid pattern");
+                }
+            }
+        }
+
+        int ordinal = type.ordinal();
+        automatons[ordinal] = builder.build();
+        regexFilters[ordinal] = new int[regexIndexes.size()];
+        for (int i = 0; i < regexIndexes.size(); i++) {
+            regexFilters[ordinal][i] = regexIndexes.get(i);
+        }
+        regexPatterns[ordinal] = patterns.toArray(new Pattern[patterns.size()]);
+    }
+
+    private Map<String, int[]> compileExactType(FilterType type) {
+        Map<String, List<Integer>> byPattern = new HashMap<>();
+        for (int i = 0; i < filters.length; i++) {
+            Filter filter = filters[i];
+            if (filter.hasFilter(type) && !TextUtils.isEmpty(filter.pattern)) {
+                List<Integer> indexes = byPattern.get(filter.pattern);
+                if (indexes == null) {
+                    indexes = new ArrayList<>(1);
+                    byPattern.put(filter.pattern, indexes);
+                }
+                indexes.add(i);
+            }
+        }
+
+        Map<String, int[]> exact = new HashMap<>(byPattern.size());
+        for (Map.Entry<String, List<Integer>> entry : byPattern.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            int[] array = new int[indexes.size()];
+            for (int i = 0; i < indexes.size(); i++) {
+                array[i] = indexes.get(i);
+            }
+            exact.put(entry.getKey(), array);
+        }
+        return exact;
+    }
+
+    /**
+     * Add the words of a pattern to the automaton, when the regex {@link FilterEngine#compile(String)} makes of it
+     * can be matched by the automaton.
+     *
+     * @return true if added, false if the pattern needs to be matched as a regex.
+     */
+    private boolean addToAutomaton(FilterAutomaton.Builder builder, String rawPattern, int filter) {
+        if (TextUtils.isEmpty(rawPattern) || (rawPattern.charAt(0) == '/' && rawPattern.length() >= 2)) {
+            // /Pattern/
+            return false;
+        }
+
+        if (rawPattern.length() >= 2 && rawPattern.charAt(0) == '"' && rawPattern.charAt(rawPattern.length() - 1) == '"') {
+            // "matches an exact sentence", anywhere in the text
+            String sentence = rawPattern.substring(1, rawPattern.length() - 1);
+            if (sentence.isEmpty()) {
+                return false;
+            }
+            builder.add(sentence, filter, false);
+            return true;
+        }
+
+        String[] words = rawPattern.split(" ");
+        for (String word : words) {
+            // Wildcards, and words starting or ending with a non word character have different \b behaviour
+            if (word.isEmpty() || word.indexOf('*') >= 0 ||
+                    !FilterAutomaton.isWordChar(word.charAt(0)) ||
+                    !FilterAutomaton.isWordChar(word.charAt(word.length() - 1))) {
+                return false;
+            }
+        }
+
+        for (String word : words) {
+            // Find a word bounded by \b
+            builder.add(word, filter, true);
+        }
+        return true;
+    }
+
+    public int size() {
+        return filters.length;
+    }
+
+    /**
+     * Get which filters apply to the board.
+     *
+     * @param board board code
+     * @return array indexed by filter, true if it applies to the board
+     */
+    public boolean[] getEnabledForBoard(String board) {
+        boolean[] enabled = new boolean[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            Filter filter = filters[i];
+            if (filter.allBoards) {
+                enabled[i] = true;
+            } else {
+                for (String code : filter.boardCodes()) {
+                    if (code.equals(board)) {
+                        enabled[i] = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Match all filters against the post and set the resulting hide, remove and color on the post.
+     * When multiple color filters match, the last one wins.
+     *
+     * @param post    post to filter
+     * @param enabled filters that apply, from {@link #getEnabledForBoard(String)}
+     */
+    // threadsafe
+    public void apply(Post post, boolean[] enabled) {
+        if (filters.length == 0) {
+            return;
+        }
+
+        boolean[] matched = new boolean[filters.length];
+
+        for (FilterType type : TYPES) {
+            String text = getText(type, post);
+            if (TextUtils.isEmpty(text)) {
+                continue;
+            }
+
+            int ordinal = type.ordinal();
+            if (type.isRegex) {
+                FilterAutomaton automaton = automatons[ordinal];
+                if (!automaton.isEmpty()) {
+                    automaton.match(text, enabled, matched);
+                }
+
+                int[] regexIndexes = regexFilters[ordinal];
+                Pattern[] patterns = regexPatterns[ordinal];
+                for (int i = 0; i < regexIndexes.length; i++) {
+                    int filter = regexIndexes[i];
+                    if (enabled[filter] && !matched[filter]) {
+                        try {
+                            matched[filter] = patterns[i].matcher(text).find();
+                        } catch (IllegalArgumentException e) {
+                            Logger.w(TAG, "matcher.find() exception", e);
+                        }
+                    }
+                }
+            } else {
+                int[] exact = exactFilters.get(ordinal).get(text);
+                if (exact != null) {
+                    for (int filter : exact) {
+                        if (enabled[filter]) {
+                            matched[filter] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < filters.length; i++) {
+            if (matched[i]) {
+                switch (actions[i]) {
+                    case COLOR:
+                        post.filterHighlightedColor = filters[i].color;
+                        break;
+                    case HIDE:
+                        post.filterStub = true;
+                        break;
+                    case REMOVE:
+                        post.filterRemove = true;
+                        break;
+                }
+            }
+        }
+    }
+
+    private static String getText(FilterType type, Post post) {
+        switch (type) {
+            case TRIPCODE:
+                return post.tripcode;
+            case NAME:
+                return post.name;
+            case COMMENT:
+                return post.rawComment;
+            case ID:
+                return post.id;
+            case SUBJECT:
+                return post.subject;
+            case FILENAME:
+                return post.filename;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+}
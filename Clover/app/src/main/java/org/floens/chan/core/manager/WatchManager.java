@@ -32,6 +32,7 @@ import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.database.DatabasePinManager;
 import org.floens.chan.core.exception.ChanLoaderException;
 import org.floens.chan.core.model.ChanThread;
+import org.floens.chan.core.model.ChanThreadIndex;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Pin;
 import org.floens.chan.core.model.Post;
@@ -42,6 +43,7 @@ import org.floens.chan.ui.service.WatchNotifier;
 import org.floens.chan.utils.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -172,6 +174,7 @@ public class WatchManager {
         }
         pins.add(pin);
         applyOrder();
+        // Synchronous, the pin id is used as a stable id and in notifications
         databaseManager.runTaskSync(databasePinManager.createPin(pin));
 
         updateState();
@@ -186,7 +189,7 @@ public class WatchManager {
 
         destroyPinWatcher(pin);
 
-        databaseManager.runTaskSync(databasePinManager.deletePin(pin));
+        databaseManager.runWrite(null, databasePinManager.deletePin(pin));
         // Update the new orders
         applyOrder();
         updatePinsInDatabase();
@@ -197,7 +200,7 @@ public class WatchManager {
     }
 
     public void updatePin(Pin pin) {
-        databaseManager.runTaskSync(databasePinManager.updatePin(pin));
+        databaseManager.runWrite(pin, databasePinManager.updatePin(pin));
 
         updateState();
 
@@ -400,7 +403,10 @@ public class WatchManager {
     }
 
     private void updatePinsInDatabase() {
-        databaseManager.runTask(databasePinManager.updatePins(pins));
+        for (int i = 0; i < pins.size(); i++) {
+            Pin pin = pins.get(i);
+            databaseManager.runWrite(pin, databasePinManager.updatePin(pin));
+        }
     }
 
     private Boolean isWatchingSettingEnabled() {
@@ -725,23 +731,27 @@ public class WatchManager {
             // Populate quotes list
             quotes.clear();
 
-            // Get list of saved replies from this thread
-            List<Post> savedReplies = new ArrayList<>();
-            for (Post item : thread.posts) {
-                // saved.title = pin.loadable.title;
-
-                if (item.isSavedReply) {
-                    savedReplies.add(item);
+            // Get the positions of the posts that have a quote to a saved reply from the reply index,
+            // a post that quotes multiple saved replies counts for each of them
+            ChanThreadIndex index = thread.getIndex();
+            int[] quotePositions = new int[16];
+            int quoteCount = 0;
+            for (int i = 0; i < index.size(); i++) {
+                if (index.get(i).isSavedReply) {
+                    int[] replyPositions = index.getReplyPositions(i);
+                    if (quoteCount + replyPositions.length > quotePositions.length) {
+                        quotePositions = Arrays.copyOf(quotePositions,
+                                Math.max(quotePositions.length * 2, quoteCount + replyPositions.length));
+                    }
+                    System.arraycopy(replyPositions, 0, quotePositions, quoteCount, replyPositions.length);
+                    quoteCount += replyPositions.length;
                 }
             }
 
-            // Now get a list of posts that have a quote to a saved reply
-            for (Post post : thread.posts) {
-                for (Post saved : savedReplies) {
-                    if (post.repliesTo.contains(saved.no)) {
-                        quotes.add(post);
-                    }
-                }
+            // In thread order
+            Arrays.sort(quotePositions, 0, quoteCount);
+            for (int i = 0; i < quoteCount; i++) {
+                quotes.add(index.get(quotePositions[i]));
             }
 
             boolean isFirstLoad = pin.watchNewCount < 0 || pin.quoteNewCount < 0;
@@ -772,9 +782,10 @@ public class WatchManager {
 
             if (Logger.debugEnabled()) {
                 Logger.d(TAG, String.format(Locale.ENGLISH,
-                        "postlast=%d postnew=%d werenewposts=%b quotelast=%d quotenew=%d werenewquotes=%b nextload=%ds",
+                        "postlast=%d postnew=%d werenewposts=%b quotelast=%d quotenew=%d werenewquotes=%b nextload=%ds notmodified=%d/%d",
                         pin.watchLastCount, pin.watchNewCount, wereNewPosts, pin.quoteLastCount,
-                        pin.quoteNewCount, wereNewQuotes, chanLoader.getTimeUntilLoadMore() / 1000));
+                        pin.quoteNewCount, wereNewQuotes, chanLoader.getTimeUntilLoadMore() / 1000,
+                        chanLoader.getNotModifiedCount(), chanLoader.getConditionalRequestCount()));
             }
 
             if (thread.archived || thread.closed) {
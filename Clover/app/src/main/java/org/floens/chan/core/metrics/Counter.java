@@ -15,30 +15,38 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package org.floens.chan.core.net;
+package org.floens.chan.core.metrics;
 
-import com.android.volley.toolbox.HurlStack;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.floens.chan.core.settings.ChanSettings;
+/**
+ * A named count of events, like cache hits. Threadsafe.
+ */
+public class Counter {
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.Proxy;
-import java.net.URL;
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
 
-public class ProxiedHurlStack extends HurlStack {
-    public ProxiedHurlStack(String userAgent) {
-        super(userAgent, null);
+    public long get() {
+        return value.get();
     }
 
-    @Override
-    protected HttpURLConnection createConnection(URL url) throws IOException {
-        // Start the connection by specifying a proxy server
-        Proxy proxy = ChanSettings.getProxy();
-        if (proxy != null) {
-            return (HttpURLConnection) url.openConnection(proxy);
-        } else {
-            return (HttpURLConnection) url.openConnection();
-        }
+    void reset() {
+        value.set(0);
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of the durations of an operation. Durations are counted in power of two buckets of microseconds,
+ * so recording is a few atomic increments and no allocations, and percentiles are accurate to a factor of two.<br>
+ * Threadsafe, a snapshot taken while recording may be slightly off.
+ */
+public class Histogram {
+    // Bucket i counts the durations from 2^i up to 2^(i+1) us, bucket 0 also counts everything below 1us
+    private static final int BUCKETS = 32;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record the time since the start, taken with {@link System#nanoTime()} or {@link org.floens.chan.utils.Time#startTiming()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+
+        buckets.incrementAndGet(bucket);
+        totalMicros.addAndGet(micros);
+
+        long max;
+        while ((max = maxMicros.get()) < micros) {
+            if (maxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long max = maxMicros.get();
+        return new Snapshot(name, total, total == 0 ? 0 : totalMicros.get() / total,
+                percentile(counts, total, max, 0.5), percentile(counts, total, max, 0.95),
+                percentile(counts, total, max, 0.99), max);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    // Upper bound of the bucket the percentile falls in, capped at the max
+    private static long percentile(long[] counts, long total, long max, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(1L << (i + 1), max);
+            }
+        }
+        return max;
+    }
+
+    public static class Snapshot {
+        public final String name;
+        public final long count;
+        public final long meanMicros;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        private Snapshot(String name, long count, long meanMicros, long p50Micros, long p95Micros, long p99Micros,
+                         long maxMicros) {
+            this.name = name;
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+    }
+}
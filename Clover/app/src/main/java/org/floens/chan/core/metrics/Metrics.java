@@ -0,0 +1,154 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.metrics;
+
+import org.floens.chan.utils.IOUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Registry of the latency histograms and cache counters of the app. Recording is cheap enough to always be on,
+ * the values are shown on the developer screen and the performance overlay, and can be exported to a file.<br>
+ * Metrics are created once, as constants of this class.
+ */
+public class Metrics {
+    private static final List<Histogram> histograms = new ArrayList<>();
+    private static final List<Counter> counters = new ArrayList<>();
+
+    public static final Histogram NETWORK = histogram("network");
+    public static final Histogram JSON_READ = histogram("json read");
+    public static final Histogram PARSE = histogram("parse");
+    public static final Histogram FILTER = histogram("filter");
+    public static final Histogram REPLY_GRAPH = histogram("reply graph");
+    public static final Histogram DATABASE_TASK = histogram("db task");
+
+    public static final Counter FILE_CACHE_HIT = counter("file cache hit");
+    public static final Counter FILE_CACHE_MISS = counter("file cache miss");
+    public static final Counter FILE_CACHE_EVICT = counter("file cache evict");
+    public static final Counter IMAGE_CACHE_HIT = counter("image cache hit");
+    public static final Counter IMAGE_CACHE_MISS = counter("image cache miss");
+    public static final Counter IMAGE_CACHE_EVICT = counter("image cache evict");
+    public static final Counter TEXT_LAYOUT_HIT = counter("text layout hit");
+    public static final Counter TEXT_LAYOUT_MISS = counter("text layout miss");
+    public static final Counter TEXT_LAYOUT_EVICT = counter("text layout evict");
+    public static final Counter TEXT_LAYOUT_PREFETCH = counter("text layout prefetch");
+    public static final Counter DATABASE_WRITE_COALESCED = counter("db write coalesced");
+    public static final Counter THREAD_CONDITIONAL_REQUEST = counter("thread conditional request");
+    public static final Counter THREAD_NOT_MODIFIED = counter("thread not modified");
+    public static final Counter THREAD_TAIL_LOAD = counter("thread tail load");
+    public static final Counter THREAD_TAIL_MISMATCH = counter("thread tail mismatch");
+
+    private Metrics() {
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static List<Histogram> getHistograms() {
+        return Collections.unmodifiableList(histograms);
+    }
+
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(counters);
+    }
+
+    public static void reset() {
+        for (int i = 0; i < histograms.size(); i++) {
+            histograms.get(i).reset();
+        }
+        for (int i = 0; i < counters.size(); i++) {
+            counters.get(i).reset();
+        }
+    }
+
+    /**
+     * All metrics, for the developer screen and the overlay.
+     *
+     * @return one line per metric
+     */
+    public static String getSummary() {
+        StringBuilder o = new StringBuilder();
+        for (int i = 0; i < histograms.size(); i++) {
+            Histogram.Snapshot s = histograms.get(i).snapshot();
+            o.append(s.name).append(": ").append(s.count);
+            if (s.count > 0) {
+                o.append(", p50 ").append(formatMicros(s.p50Micros))
+                        .append(", p95 ").append(formatMicros(s.p95Micros))
+                        .append(", max ").append(formatMicros(s.maxMicros));
+            }
+            o.append('\n');
+        }
+        for (int i = 0; i < counters.size(); i++) {
+            Counter counter = counters.get(i);
+            o.append(counter.getName()).append(": ").append(counter.get()).append('\n');
+        }
+        return o.toString();
+    }
+
+    /**
+     * Write a snapshot of all metrics to the file, tab separated with one metric per line. Times are in microseconds.
+     *
+     * @param file file to write, overwritten
+     * @throws IOException when writing failed
+     */
+    public static void exportSnapshot(File file) throws IOException {
+        Writer writer = null;
+        try {
+            writer = new FileWriter(file);
+            writer.write("# time\t" + System.currentTimeMillis() + "\n");
+            writer.write("# histogram\tname\tcount\tmean\tp50\tp95\tp99\tmax\n");
+            for (int i = 0; i < histograms.size(); i++) {
+                Histogram.Snapshot s = histograms.get(i).snapshot();
+                writer.write("histogram\t" + s.name + "\t" + s.count + "\t" + s.meanMicros + "\t" + s.p50Micros + "\t" +
+                        s.p95Micros + "\t" + s.p99Micros + "\t" + s.maxMicros + "\n");
+            }
+            writer.write("# counter\tname\tvalue\n");
+            for (int i = 0; i < counters.size(); i++) {
+                Counter counter = counters.get(i);
+                writer.write("counter\t" + counter.getName() + "\t" + counter.get() + "\n");
+            }
+            writer.close();
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        } else {
+            return String.format(Locale.ENGLISH, "%.1fms", micros / 1000.0);
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.floens.chan.core.model;
 
+import java.util.Collections;
 import java.util.List;
 
 public class ChanThread {
@@ -25,9 +26,36 @@ public class ChanThread {
     public Post op;
     public boolean closed = false;
     public boolean archived = false;
+    private ChanThreadIndex index;
 
     public ChanThread(Loadable loadable, List<Post> posts) {
         this.loadable = loadable;
         this.posts = posts;
     }
+
+    public ChanThreadIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Set the index of the posts, set together with {@link #posts}.
+     */
+    public void setIndex(ChanThreadIndex index) {
+        this.index = index;
+    }
+
+    public Post findPostById(int no) {
+        return index == null ? null : index.findPostById(no);
+    }
+
+    /**
+     * @return the posts that reply to the post, in thread order
+     */
+    public List<Post> getReplies(Post post) {
+        return index == null ? Collections.<Post>emptyList() : index.getReplies(post);
+    }
+
+    public Post findPostByImage(PostImage postImage) {
+        return index == null ? null : index.findPostByImage(postImage);
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the posts of a {@link ChanThread}: the position of each post by number, the positions of the posts that
+ * reply to each post, and the positions of the posts with an image.<br>
+ * Built on the loader thread by {@link #update(ChanThreadIndex, List, boolean)}, which only indexes the posts that were
+ * added since the previous index. Never modified afterwards, so it is threadsafe to read.
+ */
+public class ChanThreadIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Post> posts;
+    // Post no to position in posts
+    private final SparseIntArray positions;
+    // Per position, the positions of the posts that reply to it, ascending. Arrays are shared with the previous
+    // index, and copied before being changed.
+    private final int[][] repliesFrom;
+    private final int[] imagePositions;
+    private final Map<String, Integer> imagePositionsByUrl;
+    // Positions of the posts that got new replies in the update that created this index
+    private final int[] changedReplyTargets;
+
+    private ChanThreadIndex(List<Post> posts, SparseIntArray positions, int[][] repliesFrom, int[] imagePositions,
+                            Map<String, Integer> imagePositionsByUrl, int[] changedReplyTargets) {
+        this.posts = posts;
+        this.positions = positions;
+        this.repliesFrom = repliesFrom;
+        this.imagePositions = imagePositions;
+        this.imagePositionsByUrl = imagePositionsByUrl;
+        this.changedReplyTargets = changedReplyTargets;
+    }
+
+    /**
+     * Create the index for the posts. When the posts start with the same posts as the previous index, only the posts
+     * after those are indexed, otherwise everything is.
+     *
+     * @param previous index of the previous load, or null
+     * @param posts    all posts, not modified afterwards
+     * @param replies  index the replies, only used for threads
+     * @return the new index
+     */
+    public static ChanThreadIndex update(ChanThreadIndex previous, List<Post> posts, boolean replies) {
+        int size = posts.size();
+        int start = 0;
+        if (previous != null && previous.posts.size() <= size) {
+            start = previous.posts.size();
+            for (int i = 0; i < start; i++) {
+                if (previous.posts.get(i) != posts.get(i)) {
+                    start = 0;
+                    break;
+                }
+            }
+        }
+        boolean incremental = start > 0;
+
+        SparseIntArray positions = incremental ? previous.positions.clone() : new SparseIntArray(size);
+        for (int i = start; i < size; i++) {
+            // append is constant time when the numbers are ascending, like they are in threads
+            positions.append(posts.get(i).no, i);
+        }
+
+        int[][] repliesFrom = new int[size][];
+        if (incremental) {
+            System.arraycopy(previous.repliesFrom, 0, repliesFrom, 0, start);
+        }
+        Arrays.fill(repliesFrom, start, size, EMPTY);
+
+        // Count the new replies of each post first, so that every changed array is copied once
+        int[] added = new int[size];
+        int changedCount = 0;
+        if (replies) {
+            for (int i = start; i < size; i++) {
+                Post post = posts.get(i);
+                for (int j = 0; j < post.repliesTo.size(); j++) {
+                    int target = positions.get(post.repliesTo.get(j), -1);
+                    if (target >= 0) {
+                        if (added[target] == 0) {
+                            changedCount++;
+                        }
+                        added[target]++;
+                    }
+                }
+            }
+        }
+
+        int[] changedReplyTargets = new int[changedCount];
+        // Per changed target, the index in its array where the next reply goes
+        int[] fill = new int[size];
+        for (int i = 0, j = 0; i < size && j < changedCount; i++) {
+            if (added[i] > 0) {
+                changedReplyTargets[j++] = i;
+                fill[i] = repliesFrom[i].length;
+                repliesFrom[i] = Arrays.copyOf(repliesFrom[i], repliesFrom[i].length + added[i]);
+            }
+        }
+
+        if (changedCount > 0) {
+            for (int i = start; i < size; i++) {
+                Post post = posts.get(i);
+                for (int j = 0; j < post.repliesTo.size(); j++) {
+                    int target = positions.get(post.repliesTo.get(j), -1);
+                    if (target >= 0) {
+                        repliesFrom[target][fill[target]++] = i;
+                    }
+                }
+            }
+        }
+
+        int previousImages = incremental ? previous.imagePositions.length : 0;
+        int[] imagePositions = incremental ? Arrays.copyOf(previous.imagePositions, previousImages + (size - start)) :
+                new int[size];
+        Map<String, Integer> imagePositionsByUrl = incremental ?
+                new HashMap<>(previous.imagePositionsByUrl) : new HashMap<String, Integer>();
+        int imageCount = previousImages;
+        for (int i = start; i < size; i++) {
+            Post post = posts.get(i);
+            if (post.hasImage) {
+                imagePositions[imageCount++] = i;
+                imagePositionsByUrl.put(post.imageUrl, i);
+            }
+        }
+        imagePositions = Arrays.copyOf(imagePositions, imageCount);
+
+        return new ChanThreadIndex(posts, positions, repliesFrom, imagePositions, imagePositionsByUrl,
+                changedReplyTargets);
+    }
+
+    /**
+     * @return the indexed posts, do not modify
+     */
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public int size() {
+        return posts.size();
+    }
+
+    public Post get(int position) {
+        return posts.get(position);
+    }
+
+    /**
+     * @return the position of the post with the number, or -1
+     */
+    public int indexOf(int no) {
+        return positions.get(no, -1);
+    }
+
+    public Post findPostById(int no) {
+        int position = positions.get(no, -1);
+        return position >= 0 ? posts.get(position) : null;
+    }
+
+    /**
+     * @return the posts that reply to the post, in thread order
+     */
+    public List<Post> getReplies(Post post) {
+        int position = positions.get(post.no, -1);
+        if (position < 0 || repliesFrom[position].length == 0) {
+            return Collections.emptyList();
+        }
+
+        int[] from = repliesFrom[position];
+        List<Post> replies = new ArrayList<>(from.length);
+        for (int i = 0; i < from.length; i++) {
+            replies.add(posts.get(from[i]));
+        }
+        return replies;
+    }
+
+    /**
+     * @return the positions of the posts that reply to the post at the position, do not modify
+     */
+    public int[] getReplyPositions(int position) {
+        return repliesFrom[position];
+    }
+
+    /**
+     * @return the positions of the posts with an image, in thread order, do not modify
+     */
+    public int[] getImagePositions() {
+        return imagePositions;
+    }
+
+    public Post findPostByImage(PostImage postImage) {
+        Integer position = imagePositionsByUrl.get(postImage.imageUrl);
+        return position != null ? posts.get(position) : null;
+    }
+
+    /**
+     * @return the positions of the posts that got replies from the posts that were added in this update, do not modify
+     */
+    public int[] getChangedReplyTargets() {
+        return changedReplyTargets;
+    }
+}
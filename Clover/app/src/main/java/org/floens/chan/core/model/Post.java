@@ -24,14 +24,12 @@ import org.floens.chan.Chan;
 import org.floens.chan.chan.ChanParser;
 import org.floens.chan.chan.ChanUrls;
 import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.utils.collections.IntArray;
+import org.floens.chan.utils.collections.IntSet;
 import org.jsoup.parser.Parser;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -107,9 +105,9 @@ public class Post {
 
 
     /**
-     * This post replies to the these ids. Is an unmodifiable set after finish().
+     * This post replies to the these ids, in the order they are quoted. Not modified after finish().
      */
-    public Set<Integer> repliesTo = new TreeSet<>();
+    public final IntSet repliesTo = new IntSet();
 
     public final ArrayList<PostLinkable> linkables = new ArrayList<>();
 
@@ -125,6 +123,11 @@ public class Post {
 
     public CharSequence nameTripcodeIdCapcodeSpan;
 
+    /**
+     * Title and comment text for the post cell, built on any thread. Owned by the ui, a {@code PostCellData}.
+     */
+    public volatile Object cellData;
+
     // *** These next members may only change on the main thread after finish(). ***
     public boolean sticky = false;
     public boolean closed = false;
@@ -132,6 +135,8 @@ public class Post {
     public int replies = -1;
     public int images = -1;
     public int uniqueIps = 1;
+    // Number of posts in the tail json of the thread, 0 when the thread has no tail json. Only set on the op.
+    public int tailSize = 0;
     public String title = "";
 
     // *** Threadsafe members, may be read and modified on any thread. ***
@@ -142,7 +147,25 @@ public class Post {
      * These ids replied to this post.<br>
      * <b>synchronize on this when accessing.</b>
      */
-    public final List<Integer> repliesFrom = new ArrayList<>();
+    public final IntArray repliesFrom = new IntArray();
+
+    /**
+     * Changes when something that is shown changes after finish(): the replies, the op counters and the status icons.
+     * Used to only rebind the posts that changed when the thread is refreshed.
+     */
+    public int getContentVersion() {
+        int repliesFromSize;
+        synchronized (repliesFrom) {
+            repliesFromSize = repliesFrom.size();
+        }
+
+        int version = repliesFromSize;
+        version = 31 * version + replies;
+        version = 31 * version + images;
+        version = 31 * version + uniqueIps;
+        version = 31 * version + ((sticky ? 1 : 0) | (closed ? 2 : 0) | (archived ? 4 : 0) | (deleted.get() ? 8 : 0));
+        return version;
+    }
 
     /**
      * Finish up the data: parse the comment, check if the data is valid etc.
@@ -189,8 +212,6 @@ public class Post {
 
         ChanParser.getInstance().parse(this);
 
-        repliesTo = Collections.unmodifiableSet(repliesTo);
-
         return true;
     }
 }
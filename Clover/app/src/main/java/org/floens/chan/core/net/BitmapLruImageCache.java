@@ -22,9 +22,33 @@ import android.util.LruCache;
 
 import com.android.volley.toolbox.ImageLoader.ImageCache;
 
+import org.floens.chan.core.metrics.Metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Memory cache of the decoded images, sized in KB.<br>
+ * Evicted bitmaps are given to the {@link BucketedBitmapPool} when they are known to be unused: the views that show
+ * cached bitmaps call {@link #acquire(Bitmap)} and {@link #release(Bitmap)}, and only bitmaps that were acquired at
+ * least once and are released by all of them are pooled. Bitmaps that are never acquired are left to the GC, other
+ * code might still hold them. Views that show a bitmap of the {@link com.android.volley.toolbox.ImageLoader} keep it
+ * acquired with a {@link Holder}.
+ */
 public class BitmapLruImageCache extends LruCache<String, Bitmap> implements ImageCache {
-    public BitmapLruImageCache(int maxSize) {
+    private final BucketedBitmapPool bitmapPool;
+
+    // Use counts of acquired bitmaps. Weak, so a view that was thrown away without releasing doesn't leak.
+    // Synchronize on this map when accessing it or removedInUse.
+    private final Map<Bitmap, Integer> useCounts = new WeakHashMap<>();
+    // Bitmaps removed from the cache that were still used, they are pooled when released
+    private final Set<Bitmap> removedInUse = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+    public BitmapLruImageCache(int maxSize, BucketedBitmapPool bitmapPool) {
         super(maxSize);
+        this.bitmapPool = bitmapPool;
     }
 
     @Override
@@ -32,13 +56,112 @@ public class BitmapLruImageCache extends LruCache<String, Bitmap> implements Ima
         return value.getRowBytes() * value.getHeight() / 1024;
     }
 
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue == newValue) {
+            return;
+        }
+
+        if (evicted) {
+            Metrics.IMAGE_CACHE_EVICT.increment();
+        }
+
+        boolean pool = false;
+        synchronized (useCounts) {
+            Integer count = useCounts.get(oldValue);
+            if (count != null) {
+                if (count == 0) {
+                    useCounts.remove(oldValue);
+                    pool = true;
+                } else {
+                    removedInUse.add(oldValue);
+                }
+            }
+        }
+
+        if (pool) {
+            bitmapPool.put(oldValue);
+        }
+    }
+
     @Override
     public Bitmap getBitmap(String url) {
-        return get(url);
+        Bitmap bitmap = get(url);
+        if (bitmap != null) {
+            Metrics.IMAGE_CACHE_HIT.increment();
+        } else {
+            Metrics.IMAGE_CACHE_MISS.increment();
+        }
+        return bitmap;
     }
 
     @Override
     public void putBitmap(String url, Bitmap bitmap) {
         put(url, bitmap);
     }
-}
\ No newline at end of file
+
+    /**
+     * Mark the bitmap as shown, it won't be pooled until released.
+     */
+    public void acquire(Bitmap bitmap) {
+        synchronized (useCounts) {
+            Integer count = useCounts.get(bitmap);
+            useCounts.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Mark the bitmap as no longer shown by the caller. Pools it if it is not in the cache anymore and not used
+     * elsewhere.
+     */
+    public void release(Bitmap bitmap) {
+        boolean pool = false;
+        synchronized (useCounts) {
+            Integer count = useCounts.get(bitmap);
+            if (count == null || count == 0) {
+                return;
+            }
+
+            count--;
+            if (count == 0 && removedInUse.remove(bitmap)) {
+                useCounts.remove(bitmap);
+                pool = true;
+            } else {
+                useCounts.put(bitmap, count);
+            }
+        }
+
+        if (pool) {
+            bitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Keeps the bitmap a view shows acquired, releasing the previous one. Call on the main thread.
+     */
+    public static class Holder {
+        private final BitmapLruImageCache cache;
+        private Bitmap bitmap;
+
+        public Holder(BitmapLruImageCache cache) {
+            this.cache = cache;
+        }
+
+        public void set(Bitmap bitmap) {
+            if (this.bitmap != bitmap) {
+                clear();
+                this.bitmap = bitmap;
+                if (bitmap != null) {
+                    cache.acquire(bitmap);
+                }
+            }
+        }
+
+        public void clear() {
+            if (bitmap != null) {
+                cache.release(bitmap);
+                bitmap = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.android.volley.toolbox.ImageLoader;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of unused bitmaps, bucketed by their allocation size, for decoding thumbnails into with inBitmap.<br>
+ * A bitmap is taken from the smallest bucket that fits the image, but never from one more than
+ * {@link #MAX_OVERSIZE} times as large, so that a large bitmap isn't wasted on a small image.
+ * When the pool is full the bitmaps that were put in first are dropped.<br>
+ * Decoding into a bitmap of a different size needs KitKat, on older versions the pool stays empty.<br>
+ * Threadsafe.
+ */
+public class BucketedBitmapPool implements ImageLoader.BitmapPool {
+    private static final int MAX_OVERSIZE = 2;
+
+    private static final boolean SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    private final long maxSize;
+    private long size;
+
+    private final TreeMap<Integer, List<Bitmap>> buckets = new TreeMap<>();
+    // Insertion order, the first one is dropped first
+    private final LinkedList<Bitmap> order = new LinkedList<>();
+
+    private long hits;
+    private long misses;
+    private long puts;
+    private long reuseFailures;
+    private long dropped;
+
+    /**
+     * @param maxSize size of all bitmaps in the pool together, in bytes
+     */
+    public BucketedBitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    @Override
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!SUPPORTED) {
+            misses++;
+            return null;
+        }
+
+        int needed = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, List<Bitmap>> bucket = buckets.ceilingEntry(needed);
+        if (bucket == null || bucket.getKey() > needed * MAX_OVERSIZE) {
+            misses++;
+            return null;
+        }
+
+        List<Bitmap> bitmaps = bucket.getValue();
+        Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+        if (bitmaps.isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        order.remove(bitmap);
+        size -= bucket.getKey();
+        hits++;
+        return bitmap;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    @Override
+    public synchronized void put(Bitmap bitmap) {
+        if (!SUPPORTED || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxSize) {
+            dropped++;
+            return;
+        }
+
+        List<Bitmap> bitmaps = buckets.get(bytes);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<>();
+            buckets.put(bytes, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        order.add(bitmap);
+        size += bytes;
+        puts++;
+
+        while (size > maxSize) {
+            Bitmap eldest = order.removeFirst();
+            int eldestBytes = eldest.getAllocationByteCount();
+            List<Bitmap> eldestBucket = buckets.get(eldestBytes);
+            eldestBucket.remove(eldest);
+            if (eldestBucket.isEmpty()) {
+                buckets.remove(eldestBytes);
+            }
+            size -= eldestBytes;
+            dropped++;
+        }
+    }
+
+    @Override
+    public synchronized void onReuseFailed(Bitmap bitmap) {
+        reuseFailures++;
+    }
+
+    public synchronized void clear() {
+        buckets.clear();
+        order.clear();
+        size = 0;
+    }
+
+    /**
+     * Hits, misses and reuses of the pool, for the developer screen.
+     *
+     * @return the counters
+     */
+    public synchronized String getSummary() {
+        return "Size: " + (size / 1024) + "/" + (maxSize / 1024) + "KB, " + order.size() + " bitmaps\n" +
+                "Hits: " + hits + ", misses: " + misses + ", reused: " + (hits - reuseFailures) +
+                ", reuse failed: " + reuseFailures + "\n" +
+                "Returned: " + puts + ", dropped: " + dropped + "\n";
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
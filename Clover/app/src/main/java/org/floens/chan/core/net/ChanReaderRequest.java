@@ -19,6 +19,8 @@ package org.floens.chan.core.net;
 
 import android.util.JsonReader;
 
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
 import com.android.volley.Response.ErrorListener;
 import com.android.volley.Response.Listener;
 
@@ -27,43 +29,49 @@ import org.floens.chan.chan.ChanUrls;
 import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.database.DatabaseSavedReplyManager;
 import org.floens.chan.core.manager.FilterEngine;
-import org.floens.chan.core.model.Filter;
+import org.floens.chan.core.manager.FilterSet;
+import org.floens.chan.core.metrics.Metrics;
+import org.floens.chan.core.model.ChanThreadIndex;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.utils.Time;
+import org.floens.chan.utils.collections.IntSet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanReaderResponse> {
     private static final String TAG = "ChanReaderRequest";
     private static final boolean LOG_TIMING = false;
-
-    private static final int THREAD_COUNT;
-    private static ExecutorService EXECUTOR;
-
-    static {
-        THREAD_COUNT = Runtime.getRuntime().availableProcessors();
-        EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT);
-    }
+    // New posts are handed to the parse scheduler in chunks of this size while the json is still being read
+    private static final int STREAM_CHUNK_SIZE = 64;
 
     private Loadable loadable;
+    private boolean tail;
+    private ParseScheduler.Lane lane;
+    private final ParseScheduler.Batch parseBatch = new ParseScheduler.Batch();
+    private ChanThreadIndex previous;
     private List<Post> cached;
     private Post op;
     private FilterEngine filterEngine;
     private DatabaseManager databaseManager;
     private DatabaseSavedReplyManager databaseSavedReplyManager;
 
-    private List<Filter> filters;
+    private FilterSet filterSet;
+    private boolean[] filtersEnabled;
     private long startLoad;
 
+    // Validators of the previous response, sent to get a 304 when nothing changed
+    private String ifModifiedSince;
+    private String ifNoneMatch;
+
     private ChanReaderRequest(String url, Listener<ChanReaderResponse> listener, ErrorListener errorListener) {
         super(url, listener, errorListener);
         filterEngine = FilterEngine.getInstance();
@@ -71,7 +79,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
         databaseSavedReplyManager = databaseManager.getDatabaseSavedReplyManager();
     }
 
-    public static ChanReaderRequest newInstance(Loadable loadable, List<Post> cached, Listener<ChanReaderResponse> listener, ErrorListener errorListener) {
+    public static ChanReaderRequest newInstance(Loadable loadable, ChanThreadIndex previous, ParseScheduler.Lane lane, Listener<ChanReaderResponse> listener, ErrorListener errorListener) {
         String url;
 
         if (loadable.isThreadMode()) {
@@ -82,44 +90,120 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
             throw new IllegalArgumentException("Unknown mode");
         }
 
+        return create(url, false, loadable, previous, lane, listener, errorListener);
+    }
+
+    /**
+     * Refresh a loaded thread with its tail json, that only has the op and the last posts of the thread.
+     * The posts of the tail are merged into the posts of the previous load. Posts before the tail are not checked
+     * for deletion, do a full load once in a while for that.<br>
+     * When the tail does not overlap the previous load, posts may be missing in between. The response then has
+     * {@link ChanReaderResponse#tailMismatch} set and no posts, and a full load is needed. Nothing is parsed in that case.
+     *
+     * @param previous index of the previous load, not null
+     */
+    public static ChanReaderRequest newTailInstance(Loadable loadable, ChanThreadIndex previous, ParseScheduler.Lane lane, Listener<ChanReaderResponse> listener, ErrorListener errorListener) {
+        if (!loadable.isThreadMode()) {
+            throw new IllegalArgumentException("Tail loads are only possible for threads");
+        }
+        if (previous == null) {
+            throw new IllegalArgumentException("Tail loads need a previous load");
+        }
+
+        String url = ChanUrls.getThreadTailUrl(loadable.board, loadable.no);
+        return create(url, true, loadable, previous, lane, listener, errorListener);
+    }
+
+    private static ChanReaderRequest create(String url, boolean tail, Loadable loadable, ChanThreadIndex previous, ParseScheduler.Lane lane, Listener<ChanReaderResponse> listener, ErrorListener errorListener) {
         ChanReaderRequest request = new ChanReaderRequest(url, listener, errorListener);
 
-        // Copy the loadable and cached list. The cached array may changed/cleared by other threads.
+        // Copy the loadable. The index of the previous load is never modified, its posts are the cached posts.
         request.loadable = loadable.copy();
-        request.cached = new ArrayList<>(cached);
+        request.tail = tail;
+        request.previous = previous;
+        request.cached = previous == null ? Collections.<Post>emptyList() : previous.getPosts();
+        request.lane = lane;
 
-        request.filters = new ArrayList<>();
-        List<Filter> enabledFilters = request.filterEngine.getEnabledFilters();
-        for (int i = 0; i < enabledFilters.size(); i++) {
-            Filter filter = enabledFilters.get(i);
-
-            if (filter.allBoards) {
-                // copy the filter because it will get used on other threads
-                request.filters.add(filter.copy());
-            } else {
-                String[] boardCodes = filter.boardCodes();
-                for (String code : boardCodes) {
-                    if (code.equals(loadable.board)) {
-                        // copy the filter because it will get used on other threads
-                        request.filters.add(filter.copy());
-                        break;
-                    }
-                }
-            }
-        }
+        // The filter set is immutable, and replaced when the filters change
+        request.filterSet = request.filterEngine.getFilterSet();
+        request.filtersEnabled = request.filterSet.getEnabledForBoard(loadable.board);
 
         request.startLoad = Time.startTiming();
 
         return request;
     }
 
+    public boolean isTail() {
+        return tail;
+    }
+
+    /**
+     * Make this a conditional request with the validators of the previous response. A 304 response is delivered
+     * as a {@link ChanReaderResponse} with {@link ChanReaderResponse#notModified} set, without reading any json.
+     * The request then skips the Volley cache, a cache hit would be read and parsed again.
+     *
+     * @param lastModified the Last-Modified header of the previous response, or null
+     * @param etag         the ETag header of the previous response, or null
+     */
+    public void setValidators(String lastModified, String etag) {
+        ifModifiedSince = lastModified;
+        ifNoneMatch = etag;
+        if (lastModified != null || etag != null) {
+            setShouldCache(false);
+        }
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        if (ifModifiedSince == null && ifNoneMatch == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> headers = new HashMap<>(2);
+        if (ifModifiedSince != null) {
+            headers.put("If-Modified-Since", ifModifiedSince);
+        }
+        if (ifNoneMatch != null) {
+            headers.put("If-None-Match", ifNoneMatch);
+        }
+        return headers;
+    }
+
+    @Override
+    protected Response<ChanReaderResponse> parseNetworkResponse(NetworkResponse networkResponse) {
+        if (networkResponse.notModified && networkResponse.data == null) {
+            Metrics.NETWORK.recordSince(startLoad);
+
+            ChanReaderResponse notModified = new ChanReaderResponse();
+            notModified.notModified = true;
+            notModified.lastModified = ifModifiedSince;
+            notModified.etag = ifNoneMatch;
+            return Response.success(notModified, null);
+        }
+
+        Response<ChanReaderResponse> response = super.parseNetworkResponse(networkResponse);
+        if (response.isSuccess() && networkResponse.headers != null) {
+            response.result.lastModified = networkResponse.headers.get("Last-Modified");
+            response.result.etag = networkResponse.headers.get("ETag");
+        }
+        return response;
+    }
+
     @Override
     public Priority getPriority() {
-        return Priority.HIGH;
+        return lane == ParseScheduler.Lane.BACKGROUND ? Priority.NORMAL : Priority.HIGH;
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        // Stop parsing posts nobody is going to see
+        parseBatch.cancel();
     }
 
     @Override
     public ChanReaderResponse readJson(JsonReader reader) throws Exception {
+        Metrics.NETWORK.recordSince(startLoad);
         if (LOG_TIMING) {
             Time.endTiming("Network", startLoad);
         }
@@ -127,30 +211,86 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
         long load = Time.startTiming();
 
         ProcessingQueue processing = new ProcessingQueue();
+        try {
+            if (loadable.isThreadMode()) {
+                loadThread(reader, processing);
+            } else if (loadable.isCatalogMode()) {
+                loadCatalog(reader, processing);
+            } else {
+                throw new IllegalArgumentException("Unknown mode");
+            }
 
-        Map<Integer, Post> cachedByNo = new HashMap<>();
-        for (int i = 0; i < cached.size(); i++) {
-            Post cache = cached.get(i);
-            cachedByNo.put(cache.no, cache);
+            Metrics.JSON_READ.recordSince(load);
+            if (LOG_TIMING) {
+                Time.endTiming("Load json", load);
+            }
+
+            int tailStart = 0;
+            if (tail) {
+                tailStart = getTailStart(processing);
+                if (tailStart < 0) {
+                    ChanReaderResponse mismatch = new ChanReaderResponse();
+                    mismatch.tailMismatch = true;
+                    return mismatch;
+                }
+            }
+
+            List<Post> list = parsePosts(processing);
+            return processPosts(list, tailStart);
+        } finally {
+            // Not needed anymore when reading failed halfway
+            for (int i = 0; i < processing.submitted.size(); i++) {
+                processing.submitted.get(i).cancel(false);
+            }
         }
+    }
 
-        if (loadable.isThreadMode()) {
-            loadThread(reader, processing, cachedByNo);
-        } else if (loadable.isCatalogMode()) {
-            loadCatalog(reader, processing, cachedByNo);
-        } else {
-            throw new IllegalArgumentException("Unknown mode");
+    /**
+     * The tail overlaps the previous load when its first reply was already loaded, all posts after it are in the tail.
+     *
+     * @return the number of the first reply in the tail, or -1 if the tail does not overlap the previous load
+     */
+    private int getTailStart(ProcessingQueue queue) {
+        int first = Integer.MAX_VALUE;
+        boolean firstCached = false;
+        for (int i = 0; i < queue.cached.size(); i++) {
+            Post post = queue.cached.get(i);
+            if (post.no != loadable.no && post.no < first) {
+                first = post.no;
+                firstCached = true;
+            }
         }
+        for (int i = 0; i < queue.toParse.size(); i++) {
+            Post post = queue.toParse.get(i);
+            if (post.no != loadable.no && post.no < first) {
+                first = post.no;
+                firstCached = false;
+            }
+        }
+        return firstCached ? first : -1;
+    }
 
-        if (LOG_TIMING) {
-            Time.endTiming("Load json", load);
+    /**
+     * Start parsing the new posts read so far while the rest of the json is still being read from the network,
+     * once there are enough for a chunk. Not done for tails, they are small and are not parsed at all when they
+     * do not overlap.
+     */
+    private void submitReadPosts(ProcessingQueue queue) {
+        if (tail || queue.toParse.size() - queue.submittedCount < STREAM_CHUNK_SIZE) {
+            return;
         }
 
-        List<Post> list = parsePosts(processing);
-        return processPosts(list);
+        List<Post> chunk = new ArrayList<>(queue.toParse.subList(queue.submittedCount, queue.toParse.size()));
+        queue.submittedCount = queue.toParse.size();
+
+        Post[] results = new Post[chunk.size()];
+        queue.submittedResults.add(results);
+        queue.submitted.add(ParseScheduler.getInstance().submit(lane, new PostParseWorker(filterSet, filtersEnabled,
+                databaseSavedReplyManager, chunk, results, new AtomicInteger(), parseBatch), parseBatch));
     }
 
-    // Concurrently parses the new posts with an executor
+    // Concurrently parses the new posts in chunks with the shared parse scheduler.
+    // The chunks submitted while reading are waited for, the rest is parsed now.
     private List<Post> parsePosts(ProcessingQueue queue) throws InterruptedException, ExecutionException {
         long parsePosts = Time.startTiming();
 
@@ -158,59 +298,73 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
 
         total.addAll(queue.cached);
 
-        List<Callable<Post>> tasks = new ArrayList<>(queue.toParse.size());
-        for (int i = 0; i < queue.toParse.size(); i++) {
-            Post post = queue.toParse.get(i);
-            tasks.add(new PostParseCallable(filterEngine, filters, databaseSavedReplyManager, post));
+        for (int i = 0; i < queue.submitted.size(); i++) {
+            queue.submitted.get(i).get();
+            Post[] results = queue.submittedResults.get(i);
+            for (int j = 0; j < results.length; j++) {
+                if (results[j] != null) {
+                    total.add(results[j]);
+                }
+            }
         }
 
-        if (!tasks.isEmpty()) {
-            List<Future<Post>> futures = EXECUTOR.invokeAll(tasks);
-            for (int i = 0; i < futures.size(); i++) {
-                Future<Post> future = futures.get(i);
-                Post parsedPost = future.get();
+        List<Post> remaining = queue.toParse.subList(queue.submittedCount, queue.toParse.size());
+        int toParse = remaining.size();
+        if (toParse > 0) {
+            ParseScheduler scheduler = ParseScheduler.getInstance();
+
+            int chunks = (toParse + PostParseWorker.CHUNK_SIZE - 1) / PostParseWorker.CHUNK_SIZE;
+            int workerCount = Math.min(scheduler.getThreadCount(), chunks);
+
+            Post[] results = new Post[toParse];
+            AtomicInteger cursor = new AtomicInteger();
+            List<Callable<Void>> workers = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(new PostParseWorker(filterSet, filtersEnabled, databaseSavedReplyManager,
+                        remaining, results, cursor, parseBatch));
+            }
+
+            scheduler.invokeAll(lane, workers, parseBatch);
+
+            for (int i = 0; i < results.length; i++) {
+                Post parsedPost = results[i];
                 if (parsedPost != null) {
                     total.add(parsedPost);
                 }
             }
 
+            Metrics.PARSE.recordSince(parsePosts);
             if (LOG_TIMING) {
-                Time.endTiming("Parse posts with " + THREAD_COUNT + " threads", parsePosts);
+                Time.endTiming("Parse " + toParse + " posts in " + chunks + " chunks with " + workerCount + " workers in lane " + lane +
+                        " after " + queue.submittedCount + " posts parsed while reading", parsePosts);
             }
         }
 
         return total;
     }
 
-    private ChanReaderResponse processPosts(List<Post> serverPosts) throws Exception {
+    /**
+     * @param checkDeletedFrom cached posts with a lower number are not in the server posts and not checked for deletion
+     */
+    private ChanReaderResponse processPosts(List<Post> serverPosts, int checkDeletedFrom) throws Exception {
         ChanReaderResponse response = new ChanReaderResponse();
-        response.posts = new ArrayList<>(serverPosts.size());
         response.op = op;
 
-        List<Post> cachedPosts = new ArrayList<>();
         List<Post> newPosts = new ArrayList<>();
         if (cached.size() > 0) {
             long deleteCheck = Time.startTiming();
-            // Add all posts that were parsed before
-            cachedPosts.addAll(cached);
-
-            Map<Integer, Post> cachedPostsByNo = new HashMap<>();
-            for (int i = 0; i < cachedPosts.size(); i++) {
-                Post post = cachedPosts.get(i);
-                cachedPostsByNo.put(post.no, post);
-            }
-
-            Map<Integer, Post> serverPostsByNo = new HashMap<>();
-            for (int i = 0; i < serverPosts.size(); i++) {
-                Post post = serverPosts.get(i);
-                serverPostsByNo.put(post.no, post);
-            }
-
             // If there's a cached post but it's not in the list received from the server, mark it as deleted
             if (loadable.isThreadMode()) {
-                for (int i = 0; i < cachedPosts.size(); i++) {
-                    Post cachedPost = cachedPosts.get(i);
-                    cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
+                IntSet serverNos = new IntSet(serverPosts.size());
+                for (int i = 0; i < serverPosts.size(); i++) {
+                    serverNos.add(serverPosts.get(i).no);
+                }
+
+                for (int i = 0; i < cached.size(); i++) {
+                    Post cachedPost = cached.get(i);
+                    if (cachedPost.no >= checkDeletedFrom || cachedPost.no == loadable.no) {
+                        cachedPost.deleted.set(!serverNos.contains(cachedPost.no));
+                    }
                 }
             }
             if (LOG_TIMING) {
@@ -221,7 +375,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
             // If there's a post in the list from the server, that's not in the cached list, add it.
             for (int i = 0; i < serverPosts.size(); i++) {
                 Post serverPost = serverPosts.get(i);
-                if (!cachedPostsByNo.containsKey(serverPost.no)) {
+                if (previous.indexOf(serverPost.no) < 0) {
                     newPosts.add(serverPost);
                 }
             }
@@ -232,46 +386,30 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
             newPosts.addAll(serverPosts);
         }
 
-        List<Post> allPosts = new ArrayList<>(cachedPosts.size() + newPosts.size());
-        allPosts.addAll(cachedPosts);
+        // The cached posts come first, so that the index of the previous load can be extended
+        List<Post> allPosts = new ArrayList<>(cached.size() + newPosts.size());
+        allPosts.addAll(cached);
         allPosts.addAll(newPosts);
 
-        if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
-            for (int i = 0; i < allPosts.size(); i++) {
-                Post post = allPosts.get(i);
-                postsByNo.put(post.no, post);
-            }
-
-            // Maps post no's to a list of no's that that post received replies from
-            Map<Integer, List<Integer>> replies = new HashMap<>();
-
-            long collectReplies = Time.startTiming();
-            for (int i = 0; i < allPosts.size(); i++) {
-                Post sourcePost = allPosts.get(i);
+        long index = Time.startTiming();
+        ChanThreadIndex threadIndex = ChanThreadIndex.update(previous, allPosts, loadable.isThreadMode());
+        if (LOG_TIMING) {
+            Time.endTiming("Index " + newPosts.size() + " new posts", index);
+        }
 
-                for (int replyTo : sourcePost.repliesTo) {
-                    List<Integer> value = replies.get(replyTo);
-                    if (value == null) {
-                        value = new ArrayList<>(3);
-                        replies.put(replyTo, value);
-                    }
-                    value.add(sourcePost.no);
-                }
-            }
-            if (LOG_TIMING) {
-                Time.endTiming("Collect replies", collectReplies);
-            }
+        if (loadable.isThreadMode()) {
             long mapReplies = Time.startTiming();
 
-            for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
-                int key = entry.getKey();
-                List<Integer> value = entry.getValue();
-
-                Post subject = postsByNo.get(key);
+            // Only the posts that got replies from the new posts have changed
+            int[] changed = threadIndex.getChangedReplyTargets();
+            for (int i = 0; i < changed.length; i++) {
+                Post subject = threadIndex.get(changed[i]);
+                int[] replyPositions = threadIndex.getReplyPositions(changed[i]);
                 synchronized (subject.repliesFrom) {
                     subject.repliesFrom.clear();
-                    subject.repliesFrom.addAll(value);
+                    for (int j = 0; j < replyPositions.length; j++) {
+                        subject.repliesFrom.add(threadIndex.get(replyPositions[j]).no);
+                    }
                 }
             }
 
@@ -279,13 +417,15 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
                 Time.endTiming("Map replies", mapReplies);
             }
         }
+        Metrics.REPLY_GRAPH.recordSince(index);
 
-        response.posts.addAll(allPosts);
+        response.posts = allPosts;
+        response.index = threadIndex;
 
         return response;
     }
 
-    private void loadThread(JsonReader reader, ProcessingQueue queue, Map<Integer, Post> cachedByNo) throws Exception {
+    private void loadThread(JsonReader reader, ProcessingQueue queue) throws Exception {
         reader.beginObject();
         // Page object
         while (reader.hasNext()) {
@@ -295,7 +435,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
                 // Thread array
                 while (reader.hasNext()) {
                     // Thread object
-                    readPostObject(reader, queue, cachedByNo);
+                    readPostObject(reader, queue);
                 }
                 reader.endArray();
             } else {
@@ -305,7 +445,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
         reader.endObject();
     }
 
-    private void loadCatalog(JsonReader reader, ProcessingQueue queue, Map<Integer, Post> cachedByNo) throws Exception {
+    private void loadCatalog(JsonReader reader, ProcessingQueue queue) throws Exception {
         reader.beginArray(); // Array of pages
 
         while (reader.hasNext()) {
@@ -316,7 +456,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
                     reader.beginArray(); // Threads array
 
                     while (reader.hasNext()) {
-                        readPostObject(reader, queue, cachedByNo);
+                        readPostObject(reader, queue);
                     }
 
                     reader.endArray();
@@ -331,98 +471,50 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
         reader.endArray();
     }
 
-    private void readPostObject(JsonReader reader, ProcessingQueue queue, Map<Integer, Post> cachedByNo) throws Exception {
-        Post post = new Post();
-        post.board = loadable.board;
+    private void readPostObject(JsonReader reader, ProcessingQueue queue) throws Exception {
+        Post post = null;
 
         reader.beginObject();
         while (reader.hasNext()) {
             String key = reader.nextName();
 
-            switch (key) {
-                case "no":
-                    post.no = reader.nextInt();
-                    break;
-                case "now":
-                    post.date = reader.nextString();
-                    break;
-                case "name":
-                    post.name = reader.nextString();
-                    break;
-                case "com":
-                    post.rawComment = reader.nextString();
-                    break;
-                case "tim":
-                    post.tim = reader.nextLong();
-                    break;
-                case "time":
-                    post.time = reader.nextLong();
-                    break;
-                case "ext":
-                    post.ext = reader.nextString().replace(".", "");
-                    break;
-                case "resto":
-                    post.resto = reader.nextInt();
-                    break;
-                case "w":
-                    post.imageWidth = reader.nextInt();
-                    break;
-                case "h":
-                    post.imageHeight = reader.nextInt();
-                    break;
-                case "fsize":
-                    post.fileSize = reader.nextLong();
-                    break;
-                case "sub":
-                    post.subject = reader.nextString();
-                    break;
-                case "replies":
-                    post.replies = reader.nextInt();
-                    break;
-                case "filename":
-                    post.filename = reader.nextString();
-                    break;
-                case "sticky":
-                    post.sticky = reader.nextInt() == 1;
-                    break;
-                case "closed":
-                    post.closed = reader.nextInt() == 1;
-                    break;
-                case "archived":
-                    post.archived = reader.nextInt() == 1;
-                    break;
-                case "trip":
-                    post.tripcode = reader.nextString();
-                    break;
-                case "country":
-                    post.country = reader.nextString();
-                    break;
-                case "country_name":
-                    post.countryName = reader.nextString();
-                    break;
-                case "id":
-                    post.id = reader.nextString();
-                    break;
-                case "capcode":
-                    post.capcode = reader.nextString();
-                    break;
-                case "images":
-                    post.images = reader.nextInt();
-                    break;
-                case "spoiler":
-                    post.spoiler = reader.nextInt() == 1;
-                    break;
-                case "unique_ips":
-                    post.uniqueIps = reader.nextInt();
-                    break;
-                default:
-                    // Unknown/ignored key
-                    reader.skipValue();
-                    break;
+            if (post == null) {
+                // The api sends "no" as the first key. When it belongs to a post we already parsed,
+                // skip the rest of the object without building a Post or reading any strings.
+                if (key.equals("no")) {
+                    int no = reader.nextInt();
+
+                    Post cached = findCached(no);
+                    if (cached != null && !cached.isOP) {
+                        while (reader.hasNext()) {
+                            reader.nextName();
+                            reader.skipValue();
+                        }
+                        reader.endObject();
+
+                        queue.cached.add(cached);
+                        return;
+                    }
+
+                    post = new Post();
+                    post.board = loadable.board;
+                    post.no = no;
+                    continue;
+                }
+
+                post = new Post();
+                post.board = loadable.board;
             }
+
+            readPostField(reader, post, key);
         }
         reader.endObject();
 
+        if (post == null) {
+            // Empty object
+            return;
+        }
+
         if (post.resto == 0) {
             // Update OP fields later on the main thread
             op = new Post();
@@ -432,13 +524,106 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
             op.replies = post.replies;
             op.images = post.images;
             op.uniqueIps = post.uniqueIps;
+            op.tailSize = post.tailSize;
         }
 
-        Post cached = cachedByNo.get(post.no);
+        Post cached = findCached(post.no);
         if (cached != null) {
             queue.cached.add(cached);
         } else {
             queue.toParse.add(post);
+            submitReadPosts(queue);
+        }
+    }
+
+    private Post findCached(int no) {
+        return previous == null ? null : previous.findPostById(no);
+    }
+
+    private void readPostField(JsonReader reader, Post post, String key) throws Exception {
+        switch (key) {
+            case "no":
+                post.no = reader.nextInt();
+                break;
+            case "now":
+                post.date = reader.nextString();
+                break;
+            case "name":
+                post.name = reader.nextString();
+                break;
+            case "com":
+                post.rawComment = reader.nextString();
+                break;
+            case "tim":
+                post.tim = reader.nextLong();
+                break;
+            case "time":
+                post.time = reader.nextLong();
+                break;
+            case "ext":
+                post.ext = reader.nextString().replace(".", "");
+                break;
+            case "resto":
+                post.resto = reader.nextInt();
+                break;
+            case "w":
+                post.imageWidth = reader.nextInt();
+                break;
+            case "h":
+                post.imageHeight = reader.nextInt();
+                break;
+            case "fsize":
+                post.fileSize = reader.nextLong();
+                break;
+            case "sub":
+                post.subject = reader.nextString();
+                break;
+            case "replies":
+                post.replies = reader.nextInt();
+                break;
+            case "filename":
+                post.filename = reader.nextString();
+                break;
+            case "sticky":
+                post.sticky = reader.nextInt() == 1;
+                break;
+            case "closed":
+                post.closed = reader.nextInt() == 1;
+                break;
+            case "archived":
+                post.archived = reader.nextInt() == 1;
+                break;
+            case "trip":
+                post.tripcode = reader.nextString();
+                break;
+            case "country":
+                post.country = reader.nextString();
+                break;
+            case "country_name":
+                post.countryName = reader.nextString();
+                break;
+            case "id":
+                post.id = reader.nextString();
+                break;
+            case "capcode":
+                post.capcode = reader.nextString();
+                break;
+            case "images":
+                post.images = reader.nextInt();
+                break;
+            case "spoiler":
+                post.spoiler = reader.nextInt() == 1;
+                break;
+            case "unique_ips":
+                post.uniqueIps = reader.nextInt();
+                break;
+            case "tail_size":
+                post.tailSize = reader.nextInt();
+                break;
+            default:
+                // Unknown/ignored key
+                reader.skipValue();
+                break;
         }
     }
 
@@ -447,10 +632,25 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanReaderRequest.ChanR
         // Used to later copy members like image count to the real op on the main thread.
         public Post op;
         public List<Post> posts;
+        // Index of the posts, built on the loader thread
+        public ChanThreadIndex index;
+
+        // The thread did not change since the validators were sent, op, posts and index are null
+        public boolean notModified;
+        // The tail did not overlap the previous load, op, posts and index are null
+        public boolean tailMismatch;
+        // Validators to send with the next request, null if the server did not send them
+        public String lastModified;
+        public String etag;
     }
 
     private static class ProcessingQueue {
         public List<Post> cached = new ArrayList<>();
         public List<Post> toParse = new ArrayList<>();
+
+        // Chunks of toParse submitted while reading, with their results
+        public int submittedCount = 0;
+        public List<Future<Void>> submitted = new ArrayList<>();
+        public List<Post[]> submittedResults = new ArrayList<>();
     }
 }
@@ -0,0 +1,84 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that decodes images, separate from the network dispatchers that fetch them.
+ * The number of threads is limited by the core count and the memory class, every decode holds
+ * the encoded data, the decoded bitmap and sometimes a scaled copy.<br>
+ * The most recently submitted image is decoded first, when scrolling those are the images on screen.
+ */
+public class ImageDecodeExecutor extends ThreadPoolExecutor {
+    private static final int MAX_THREADS = 4;
+    // Allow one decode thread per this many megabytes of the memory class
+    private static final int MEMORY_CLASS_PER_THREAD = 32;
+
+    public ImageDecodeExecutor(Context context) {
+        this(getThreadCount(context));
+    }
+
+    private ImageDecodeExecutor(int threadCount) {
+        super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LifoQueue(), new DecodeThreadFactory());
+    }
+
+    public static int getThreadCount(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int byMemory = activityManager.getMemoryClass() / MEMORY_CLASS_PER_THREAD;
+        int byCores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_THREADS, Math.min(byMemory, byCores)));
+    }
+
+    public String getSummary() {
+        return "Threads: " + getCorePoolSize() + ", queued: " + getQueue().size() + ", decoded: " + getCompletedTaskCount() + "\n";
+    }
+
+    private static class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        @Override
+        public boolean offer(@NonNull Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+
+    private static class DecodeThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "DecodeThread #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
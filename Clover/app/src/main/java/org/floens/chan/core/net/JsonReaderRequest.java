@@ -18,6 +18,7 @@
 package org.floens.chan.core.net;
 
 import android.util.JsonReader;
+import android.util.MalformedJsonException;
 
 import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
@@ -26,18 +27,30 @@ import com.android.volley.Response.ErrorListener;
 import com.android.volley.Response.Listener;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.StreamingRequest;
 
 import org.floens.chan.utils.IOUtils;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 
-public abstract class JsonReaderRequest<T> extends Request<T> {
+/**
+ * Request that reads json. Responses from the network are read from the stream while they are received,
+ * responses from the cache are read from the cached data.
+ */
+public abstract class JsonReaderRequest<T> extends Request<T> implements StreamingRequest {
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
     protected final Listener<T> listener;
 
+    // Result of the last stream, read on the network dispatcher thread before parseNetworkResponse
+    private boolean streamed;
+    private T streamedRead;
+    private Exception streamedException;
+
     public JsonReaderRequest(String url, Listener<T> listener, ErrorListener errorListener) {
         super(Method.GET, url, errorListener);
 
@@ -50,20 +63,47 @@ public abstract class JsonReaderRequest<T> extends Request<T> {
     }
 
     @Override
-    protected Response<T> parseNetworkResponse(NetworkResponse response) {
-        ByteArrayInputStream baos = new ByteArrayInputStream(response.data);
-        JsonReader reader = new JsonReader(new InputStreamReader(baos, UTF8));
+    public void onStream(InputStream in) throws IOException {
+        streamed = true;
+        streamedRead = null;
+        streamedException = null;
 
-        Exception exception = null;
-        T read = null;
+        // Not closed, the stream is owned by the network
+        JsonReader reader = new JsonReader(new InputStreamReader(in, UTF8));
         try {
-            read = readJson(reader);
+            streamedRead = readJson(reader);
+        } catch (MalformedJsonException e) {
+            // Bad data, not a network error
+            streamedException = e;
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
-
-            exception = e;
+            streamedException = e;
         }
+    }
 
-        IOUtils.closeQuietly(reader);
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        Exception exception = null;
+        T read = null;
+
+        if (streamed) {
+            read = streamedRead;
+            exception = streamedException;
+            streamedRead = null;
+            streamedException = null;
+        } else {
+            ByteArrayInputStream baos = new ByteArrayInputStream(response.data);
+            JsonReader reader = new JsonReader(new InputStreamReader(baos, UTF8));
+
+            try {
+                read = readJson(reader);
+            } catch (Exception e) {
+                exception = e;
+            }
+
+            IOUtils.closeQuietly(reader);
+        }
 
         if (read == null) {
             if (exception != null) {
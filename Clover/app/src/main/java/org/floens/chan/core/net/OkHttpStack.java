@@ -0,0 +1,138 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request.Method;
+import com.android.volley.toolbox.HttpStack;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.IOException;
+import java.util.Map;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Volley stack on the shared OkHttp client, with the timeout of the Volley request.
+ */
+public class OkHttpStack implements HttpStack {
+    private static final ProtocolVersion HTTP_1_1 = new ProtocolVersion("HTTP", 1, 1);
+
+    private final SharedHttpClient httpClient;
+    private final String userAgent;
+
+    public OkHttpStack(SharedHttpClient httpClient, String userAgent) {
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public HttpResponse performRequest(com.android.volley.Request<?> request, Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+        Request.Builder builder = new Request.Builder().url(request.getUrl());
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        for (Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        builder.header("User-Agent", userAgent);
+
+        setMethod(builder, request);
+
+        Response response = httpClient.get(request.getTimeoutMs()).newCall(builder.build()).execute();
+
+        BasicHttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(HTTP_1_1, response.code(), response.message()));
+
+        ResponseBody body = response.body();
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(body.byteStream());
+        entity.setContentLength(body.contentLength());
+        entity.setContentEncoding(response.header("Content-Encoding"));
+        MediaType contentType = body.contentType();
+        if (contentType != null) {
+            entity.setContentType(contentType.toString());
+        }
+        httpResponse.setEntity(entity);
+
+        Headers headers = response.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            httpResponse.addHeader(new BasicHeader(headers.name(i), headers.value(i)));
+        }
+
+        return httpResponse;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void setMethod(Request.Builder builder, com.android.volley.Request<?> request) throws AuthFailureError {
+        switch (request.getMethod()) {
+            case Method.DEPRECATED_GET_OR_POST:
+                // A request with a post body is a POST, a GET otherwise
+                byte[] postBody = request.getPostBody();
+                if (postBody != null) {
+                    builder.post(RequestBody.create(MediaType.parse(request.getPostBodyContentType()), postBody));
+                }
+                break;
+            case Method.GET:
+                builder.get();
+                break;
+            case Method.DELETE:
+                builder.delete();
+                break;
+            case Method.POST:
+                builder.post(createBody(request));
+                break;
+            case Method.PUT:
+                builder.put(createBody(request));
+                break;
+            case Method.HEAD:
+                builder.head();
+                break;
+            case Method.OPTIONS:
+                builder.method("OPTIONS", null);
+                break;
+            case Method.TRACE:
+                builder.method("TRACE", null);
+                break;
+            case Method.PATCH:
+                builder.patch(createBody(request));
+                break;
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    private static RequestBody createBody(com.android.volley.Request<?> request) throws AuthFailureError {
+        byte[] body = request.getBody();
+        if (body == null) {
+            body = new byte[0];
+        }
+        return RequestBody.create(MediaType.parse(request.getBodyContentType()), body);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared executor for parsing posts. Tasks are ordered by {@link Lane} so that the thread on screen
+ * is parsed before catalogs and background pin refreshes, and FIFO within the same lane.
+ * <p>
+ * The queue is capped: when it is full the task is run on the calling thread instead, which
+ * pushes back on the network dispatchers that are producing the work.
+ */
+public class ParseScheduler {
+    private static final int QUEUE_CAPACITY = 512;
+
+    private static final ParseScheduler instance = new ParseScheduler();
+
+    public static ParseScheduler getInstance() {
+        return instance;
+    }
+
+    public enum Lane {
+        THREAD,
+        CATALOG,
+        BACKGROUND
+    }
+
+    private final int threadCount;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LaneStats[] stats;
+
+    private ParseScheduler() {
+        threadCount = Runtime.getRuntime().availableProcessors();
+
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ParseThreadFactory());
+
+        Lane[] lanes = Lane.values();
+        stats = new LaneStats[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            stats[i] = new LaneStats();
+        }
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Submit the tasks in the given lane and wait for all of them to complete.
+     * The returned list is in the same order as the tasks.
+     *
+     * @param lane  lane to run the tasks in
+     * @param tasks tasks to run
+     * @param batch batch that the tasks are registered in, so that they can be cancelled
+     * @return results of the tasks
+     * @throws InterruptedException  when interrupted while waiting
+     * @throws ExecutionException    when a task threw
+     * @throws java.util.concurrent.CancellationException when the batch was cancelled
+     */
+    public <T> List<T> invokeAll(Lane lane, List<? extends Callable<T>> tasks, Batch batch)
+            throws InterruptedException, ExecutionException {
+        List<Future<T>> submitted = new ArrayList<>(tasks.size());
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                submitted.add(submit(lane, tasks.get(i), batch));
+            }
+
+            List<T> results = new ArrayList<>(submitted.size());
+            for (int i = 0; i < submitted.size(); i++) {
+                results.add(submitted.get(i).get());
+            }
+            return results;
+        } finally {
+            for (int i = 0; i < submitted.size(); i++) {
+                // Tasks that are still queued after an error or interrupt are not needed anymore
+                submitted.get(i).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Submit a task in the given lane without waiting for it. The caller must wait for the task or cancel it.
+     * When the queue is full the task is run on the calling thread before returning.
+     *
+     * @param lane  lane to run the task in
+     * @param task  task to run
+     * @param batch batch that the task is registered in until it is done, so that it can be cancelled
+     * @return future of the task
+     */
+    public <T> Future<T> submit(Lane lane, Callable<T> task, Batch batch) {
+        ParseTask<T> parseTask = new ParseTask<>(task, lane, sequence.getAndIncrement(), batch);
+        batch.add(parseTask);
+
+        LaneStats laneStats = stats[lane.ordinal()];
+        laneStats.submitted.incrementAndGet();
+        if (executor.getQueue().size() >= QUEUE_CAPACITY) {
+            laneStats.ranInline.incrementAndGet();
+            parseTask.run();
+        } else {
+            executor.execute(parseTask);
+        }
+        return parseTask;
+    }
+
+    /**
+     * Summary of the tasks run per lane, for the developer screen.
+     *
+     * @return stats per lane
+     */
+    public String getSummary() {
+        String o = "Threads: " + threadCount + ", queued: " + executor.getQueue().size() + "\n";
+        Lane[] lanes = Lane.values();
+        for (int i = 0; i < lanes.length; i++) {
+            LaneStats s = stats[i];
+            long completed = s.completed.get();
+            o += lanes[i].name().toLowerCase(Locale.ENGLISH) + ": " +
+                    s.submitted.get() + " submitted, " +
+                    completed + " completed, " +
+                    s.cancelled.get() + " cancelled, " +
+                    s.ranInline.get() + " ran inline";
+            if (completed > 0) {
+                o += ", avg wait " + (s.waitNanos.get() / completed / 1000) + "us" +
+                        ", avg run " + (s.runNanos.get() / completed / 1000) + "us";
+            }
+            o += "\n";
+        }
+        return o;
+    }
+
+    /**
+     * Set of tasks belonging to one request. Cancelling the batch cancels all tasks that
+     * haven't started yet, and any tasks submitted afterwards.
+     */
+    public static class Batch {
+        private final List<FutureTask<?>> tasks = new ArrayList<>();
+        private boolean cancelled = false;
+
+        public void cancel() {
+            List<FutureTask<?>> toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = new ArrayList<>(tasks);
+                tasks.clear();
+            }
+
+            for (int i = 0; i < toCancel.size(); i++) {
+                toCancel.get(i).cancel(false);
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void add(FutureTask<?> task) {
+            boolean cancelNow;
+            synchronized (this) {
+                cancelNow = cancelled;
+                if (!cancelNow) {
+                    tasks.add(task);
+                }
+            }
+
+            if (cancelNow) {
+                task.cancel(false);
+            }
+        }
+
+        private synchronized void remove(FutureTask<?> task) {
+            tasks.remove(task);
+        }
+    }
+
+    private class ParseTask<T> extends FutureTask<T> implements Comparable<ParseTask<?>> {
+        private final Lane lane;
+        private final long sequence;
+        private final Batch batch;
+        private final long queued;
+
+        public ParseTask(Callable<T> callable, Lane lane, long sequence, Batch batch) {
+            super(callable);
+            this.lane = lane;
+            this.sequence = sequence;
+            this.batch = batch;
+            queued = System.nanoTime();
+        }
+
+        @Override
+        protected void done() {
+            // Completed or cancelled, the batch does not need to cancel it anymore
+            batch.remove(this);
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+
+            LaneStats laneStats = stats[lane.ordinal()];
+            long start = System.nanoTime();
+            laneStats.waitNanos.addAndGet(start - queued);
+            super.run();
+            laneStats.runNanos.addAndGet(System.nanoTime() - start);
+            laneStats.completed.incrementAndGet();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                stats[lane.ordinal()].cancelled.incrementAndGet();
+                executor.remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(@NonNull ParseTask<?> other) {
+            int byLane = lane.compareTo(other.lane);
+            if (byLane != 0) {
+                return byLane;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static class LaneStats {
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong ranInline = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+    }
+
+    private static class ParseThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "ParseThread #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
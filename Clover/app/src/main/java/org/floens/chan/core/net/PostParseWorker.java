@@ -0,0 +1,93 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import org.floens.chan.core.database.DatabaseSavedReplyManager;
+import org.floens.chan.core.manager.FilterSet;
+import org.floens.chan.core.metrics.Metrics;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Called concurrently to parse the post html and the filters on it.
+// Workers share a cursor over the posts and claim contiguous chunks of it until all posts are parsed,
+// so a fast worker takes over the chunks of a slow one. Results are stored by index to keep the order.
+class PostParseWorker implements Callable<Void> {
+    private static final String TAG = "PostParseWorker";
+    public static final int CHUNK_SIZE = 16;
+
+    private FilterSet filterSet;
+    private boolean[] filtersEnabled;
+    private DatabaseSavedReplyManager savedReplyManager;
+    private List<Post> posts;
+    private Post[] results;
+    private AtomicInteger cursor;
+    private ParseScheduler.Batch batch;
+
+    public PostParseWorker(FilterSet filterSet, boolean[] filtersEnabled,
+                           DatabaseSavedReplyManager savedReplyManager,
+                           List<Post> posts, Post[] results, AtomicInteger cursor,
+                           ParseScheduler.Batch batch) {
+        this.filterSet = filterSet;
+        this.filtersEnabled = filtersEnabled;
+        this.savedReplyManager = savedReplyManager;
+        this.posts = posts;
+        this.results = results;
+        this.cursor = cursor;
+        this.batch = batch;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        int size = posts.size();
+        int start;
+        while ((start = cursor.getAndAdd(CHUNK_SIZE)) < size) {
+            if (batch.isCancelled()) {
+                throw new CancellationException();
+            }
+
+            int end = Math.min(start + CHUNK_SIZE, size);
+            for (int i = start; i < end; i++) {
+                results[i] = parse(posts.get(i));
+            }
+        }
+
+        return null;
+    }
+
+    private Post parse(Post post) {
+        // Process the filters before finish, because parsing the html is dependent on filter matches
+        long filter = Time.startTiming();
+        filterSet.apply(post, filtersEnabled);
+        Metrics.FILTER.recordSince(filter);
+
+        if (!post.finish()) {
+            Logger.e(TAG, "Incorrect data about post received for post " + post.no);
+            return null;
+        }
+
+        post.isSavedReply = savedReplyManager.isSaved(post.board, post.no);
+
+        return post;
+    }
+}
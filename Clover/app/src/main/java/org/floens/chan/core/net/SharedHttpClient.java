@@ -0,0 +1,99 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import org.floens.chan.core.settings.ChanSettings;
+
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The one http transport of the app, used by Volley, the file cache and the reply manager. All clients handed out
+ * share the connection pool and dispatcher, so connections to the 4chan hosts are reused by all of them.<br>
+ * The client with the proxy from {@link ChanSettings#getProxy()} is rebuilt only when the proxy changes.
+ * Clients with other timeouts are derived from it and kept until the proxy changes.
+ */
+public class SharedHttpClient {
+    public static final int DEFAULT_TIMEOUT = 10000;
+
+    private final OkHttpClient base;
+
+    private Proxy proxy;
+    private OkHttpClient client;
+    private final Map<Integer, OkHttpClient> clientsByTimeout = new HashMap<>();
+
+    public SharedHttpClient() {
+        base = new OkHttpClient.Builder()
+                .connectTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+                // Disable SPDY, causes reproducible timeouts, only one download at the same time and other fun stuff
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+        client = base;
+    }
+
+    /**
+     * @return the client with the default timeout and the current proxy
+     */
+    public synchronized OkHttpClient get() {
+        Proxy current = ChanSettings.getProxy();
+        if (current != proxy) {
+            proxy = current;
+            client = base.newBuilder().proxy(current).build();
+            clientsByTimeout.clear();
+        }
+        return client;
+    }
+
+    /**
+     * @param timeout connect, read and write timeout in milliseconds
+     * @return the client with the timeout and the current proxy
+     */
+    public synchronized OkHttpClient get(int timeout) {
+        OkHttpClient client = get();
+        if (timeout == DEFAULT_TIMEOUT) {
+            return client;
+        }
+
+        OkHttpClient withTimeout = clientsByTimeout.get(timeout);
+        if (withTimeout == null) {
+            withTimeout = client.newBuilder()
+                    .connectTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .readTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .writeTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .build();
+            clientsByTimeout.put(timeout, withTimeout);
+        }
+        return withTimeout;
+    }
+
+    public String getSummary() {
+        OkHttpClient client = get();
+        return "Connections: " + client.connectionPool().connectionCount() + ", idle: " +
+                client.connectionPool().idleConnectionCount() + "\n" +
+                "Running calls: " + client.dispatcher().runningCallsCount() + ", queued: " +
+                client.dispatcher().queuedCallsCount() + "\n";
+    }
+}
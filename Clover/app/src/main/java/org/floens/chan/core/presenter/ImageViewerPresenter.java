@@ -21,6 +21,7 @@ import android.net.ConnectivityManager;
 import android.support.v4.view.ViewPager;
 
 import org.floens.chan.Chan;
+import org.floens.chan.core.cache.MediaPrefetcher;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.PostImage;
 import org.floens.chan.core.settings.ChanSettings;
@@ -33,8 +34,12 @@ import static org.floens.chan.utils.AndroidUtils.isConnected;
 
 public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.OnPageChangeListener {
     private static final String TAG = "ImageViewerPresenter";
+    private static final int PREFETCH_AHEAD = 3;
+    private static final int PREFETCH_BEHIND = 1;
+    private static final long PREFETCH_BYTE_BUDGET = 16 * 1024 * 1024;
 
     private final Callback callback;
+    private final MediaPrefetcher prefetcher;
 
     private boolean entering = true;
     private boolean exiting = false;
@@ -49,6 +54,7 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
 
     public ImageViewerPresenter(Callback callback) {
         this.callback = callback;
+        prefetcher = new MediaPrefetcher(Chan.getFileCache(), Chan.getVolleyRequestQueue(), PREFETCH_BYTE_BUDGET);
     }
 
     public void showImages(List<PostImage> images, int position, Loadable loadable) {
@@ -96,6 +102,8 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
         callback.setPreviewVisibility(true);
         callback.startPreviewOutTransition(postImage);
         callback.showProgress(false);
+
+        prefetcher.cancel();
     }
 
     public List<PostImage> getAllPostImages() {
@@ -196,6 +204,46 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
                 callback.setImageMode(postImage, MultiImageView.Mode.MOVIE);
             }
         }
+
+        prefetch();
+    }
+
+    /**
+     * Prefetch the images around the selected one, in the order they are likely to be swiped to.
+     * The selected image is included so that its download, which is shared with the view, is not cancelled and
+     * finishes before the others start.
+     */
+    private void prefetch() {
+        if (exiting) return;
+
+        // Same rules as the auto loading in onLowResInCenter
+        boolean loadImages = shouldLoadForNetworkType(ChanSettings.imageAutoLoadNetwork.get());
+        boolean loadVideos = loadImages && shouldLoadForNetworkType(ChanSettings.videoAutoLoadNetwork.get());
+
+        List<PostImage> wanted = new ArrayList<>(1 + PREFETCH_AHEAD + PREFETCH_BEHIND);
+        if (loadImages) {
+            addPrefetch(wanted, selectedPosition, loadVideos);
+            for (int i = 1; i <= Math.max(PREFETCH_AHEAD, PREFETCH_BEHIND); i++) {
+                if (i <= PREFETCH_AHEAD) {
+                    addPrefetch(wanted, selectedPosition + i, loadVideos);
+                }
+                if (i <= PREFETCH_BEHIND) {
+                    addPrefetch(wanted, selectedPosition - i, loadVideos);
+                }
+            }
+        }
+        prefetcher.prefetchImages(wanted);
+    }
+
+    private void addPrefetch(List<PostImage> wanted, int position, boolean loadVideos) {
+        if (position < 0 || position >= images.size()) {
+            return;
+        }
+
+        PostImage postImage = images.get(position);
+        if (!postImage.spoiler && (postImage.type != PostImage.Type.MOVIE || loadVideos)) {
+            wanted.add(postImage);
+        }
     }
 
     @Override
@@ -254,12 +254,9 @@ public class ThreadPresenter implements ChanLoader.ChanLoaderCallback, PostAdapt
             List<Post> posts = result.posts;
             int more = 0;
             if (lastLoaded > 0) {
-                for (int i = 0; i < posts.size(); i++) {
-                    Post post = posts.get(i);
-                    if (post.no == lastLoaded) {
-                        more = posts.size() - i - 1;
-                        break;
-                    }
+                int lastLoadedPosition = result.getIndex().indexOf(lastLoaded);
+                if (lastLoadedPosition >= 0) {
+                    more = posts.size() - lastLoadedPosition - 1;
                 }
             }
             loadable.setLastLoaded(posts.get(posts.size() - 1).no);
@@ -352,14 +349,10 @@ public class ThreadPresenter implements ChanLoader.ChanLoaderCallback, PostAdapt
     }
 
     public void selectPostImage(PostImage postImage) {
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        for (int i = 0; i < posts.size(); i++) {
-            Post post = posts.get(i);
-            if (post.image == postImage) {
-                scrollToPost(post, false);
-                highlightPost(post);
-                break;
-            }
+        Post post = chanLoader.getThread().findPostByImage(postImage);
+        if (post != null && post.image == postImage) {
+            scrollToPost(post, false);
+            highlightPost(post);
         }
     }
 
@@ -535,15 +528,7 @@ public class ThreadPresenter implements ChanLoader.ChanLoaderCallback, PostAdapt
 
     @Override
     public void onShowPostReplies(Post post) {
-        List<Post> posts = new ArrayList<>();
-        synchronized (post.repliesFrom) {
-            for (int no : post.repliesFrom) {
-                Post replyPost = findPostById(no);
-                if (replyPost != null) {
-                    posts.add(replyPost);
-                }
-            }
-        }
+        List<Post> posts = chanLoader.getThread().getReplies(post);
         if (posts.size() > 0) {
             threadPresenterCallback.showPostsPopup(post, posts);
         }
@@ -660,12 +645,7 @@ public class ThreadPresenter implements ChanLoader.ChanLoaderCallback, PostAdapt
     }
 
     private Post findPostById(int id) {
-        for (Post post : chanLoader.getThread().posts) {
-            if (post.no == id) {
-                return post;
-            }
-        }
-        return null;
+        return chanLoader.getThread().findPostById(id);
     }
 
     private void showPosts() {
@@ -111,11 +111,13 @@ public class ChanSettings {
     public static final BooleanSetting postNewCaptcha;
 
     public static final BooleanSetting developer;
+    public static final BooleanSetting developerPerformanceOverlay;
 
     public static final StringSetting saveLocation;
     public static final BooleanSetting saveOriginalFilename;
     public static final BooleanSetting shareUrl;
     public static final BooleanSetting networkHttps;
+    public static final BooleanSetting parallelDownloads;
     public static final BooleanSetting enableReplyFab;
     public static final BooleanSetting anonymize;
     public static final BooleanSetting anonymizeIds;
@@ -203,6 +205,7 @@ public class ChanSettings {
         postNewCaptcha = new BooleanSetting(p, "preference_new_captcha", false);
 
         developer = new BooleanSetting(p, "preference_developer", false);
+        developerPerformanceOverlay = new BooleanSetting(p, "preference_developer_performance_overlay", false);
 
         saveLocation = new StringSetting(p, "preference_image_save_location", Environment.getExternalStorageDirectory() + File.separator + "Clover");
         saveLocation.addCallback(new Setting.SettingCallback<String>() {
@@ -214,6 +217,7 @@ public class ChanSettings {
         saveOriginalFilename = new BooleanSetting(p, "preference_image_save_original", false);
         shareUrl = new BooleanSetting(p, "preference_image_share_url", false);
         networkHttps = new BooleanSetting(p, "preference_network_https", true);
+        parallelDownloads = new BooleanSetting(p, "preference_parallel_downloads", false);
         enableReplyFab = new BooleanSetting(p, "preference_enable_reply_fab", true);
         anonymize = new BooleanSetting(p, "preference_anonymize", false);
         anonymizeIds = new BooleanSetting(p, "preference_anonymize_ids", false);
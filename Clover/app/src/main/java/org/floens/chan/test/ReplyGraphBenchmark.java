@@ -0,0 +1,231 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.test;
+
+import android.os.Debug;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.collections.IntArray;
+import org.floens.chan.utils.collections.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Allocations of a refresh of a synthetic thread, with the boxed collections that were used before and with the
+ * primitive collections. The refresh adds {@link #NEW_POSTS} posts to a thread of {@link #POSTS} posts and rebuilds
+ * the whole reply graph, the same way for both. Results are logged.
+ */
+@SuppressWarnings("deprecation")
+public class ReplyGraphBenchmark {
+    private static final String TAG = "ReplyGraphBenchmark";
+
+    private static final int POSTS = 1500;
+    private static final int NEW_POSTS = 50;
+    private static final int FIRST_NO = 60000000;
+    private static final int RUNS = 5;
+
+    private final List<Post> posts = new ArrayList<>(POSTS);
+    // The quotes of each post, boxed like the old Post.repliesTo
+    private final List<Set<Integer>> boxedRepliesTo = new ArrayList<>(POSTS);
+
+    public ReplyGraphBenchmark() {
+        Random random = new Random(POSTS);
+        for (int i = 0; i < POSTS; i++) {
+            Post post = new Post();
+            post.no = FIRST_NO + i;
+            Set<Integer> boxed = new TreeSet<>();
+            if (i > 0) {
+                // Every post quotes one to three earlier posts, a third of them quote the op
+                int quotes = 1 + random.nextInt(3);
+                for (int j = 0; j < quotes; j++) {
+                    int quoted = random.nextInt(3) == 0 ? FIRST_NO : FIRST_NO + random.nextInt(i);
+                    post.repliesTo.add(quoted);
+                    boxed.add(quoted);
+                }
+            }
+            posts.add(post);
+            boxedRepliesTo.add(boxed);
+        }
+    }
+
+    public void run() {
+        // Warm up
+        refreshBoxed();
+        refreshPrimitive();
+
+        for (int i = 0; i < RUNS; i++) {
+            measure("boxed", new Runnable() {
+                @Override
+                public void run() {
+                    refreshBoxed();
+                }
+            });
+            measure("primitive", new Runnable() {
+                @Override
+                public void run() {
+                    refreshPrimitive();
+                }
+            });
+        }
+    }
+
+    private void measure(String name, Runnable refresh) {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        refresh.run();
+        long time = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Logger.i(TAG, name + ": " + Debug.getThreadAllocCount() + " objects, " + Debug.getThreadAllocSize() +
+                " bytes, " + (time / 1000) + "us");
+    }
+
+    // The delete check, new check and reply graph of ChanReaderRequest before the primitive collections
+    private void refreshBoxed() {
+        int cachedCount = POSTS - NEW_POSTS;
+
+        Map<Integer, Post> cachedPostsByNo = new HashMap<>();
+        for (int i = 0; i < cachedCount; i++) {
+            cachedPostsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        Map<Integer, Post> serverPostsByNo = new HashMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            serverPostsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        int deleted = 0;
+        for (int i = 0; i < cachedCount; i++) {
+            if (!serverPostsByNo.containsKey(posts.get(i).no)) {
+                deleted++;
+            }
+        }
+
+        List<Post> newPosts = new ArrayList<>();
+        for (int i = 0; i < POSTS; i++) {
+            if (!cachedPostsByNo.containsKey(posts.get(i).no)) {
+                newPosts.add(posts.get(i));
+            }
+        }
+
+        Map<Integer, Post> postsByNo = new HashMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            postsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        Map<Integer, List<Integer>> replies = new HashMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            for (int replyTo : boxedRepliesTo.get(i)) {
+                List<Integer> value = replies.get(replyTo);
+                if (value == null) {
+                    value = new ArrayList<>(3);
+                    replies.put(replyTo, value);
+                }
+                value.add(posts.get(i).no);
+            }
+        }
+
+        List<Integer> repliesFrom = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
+            if (postsByNo.get(entry.getKey()) != null) {
+                repliesFrom.clear();
+                repliesFrom.addAll(entry.getValue());
+            }
+        }
+
+        if (deleted + newPosts.size() < 0) {
+            Logger.e(TAG, "Unreachable, keeps the results alive");
+        }
+    }
+
+    // The same with the primitive collections
+    private void refreshPrimitive() {
+        int cachedCount = POSTS - NEW_POSTS;
+
+        IntObjectMap<Post> cachedPostsByNo = new IntObjectMap<>();
+        for (int i = 0; i < cachedCount; i++) {
+            cachedPostsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        IntObjectMap<Post> serverPostsByNo = new IntObjectMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            serverPostsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        int deleted = 0;
+        for (int i = 0; i < cachedCount; i++) {
+            if (!serverPostsByNo.containsKey(posts.get(i).no)) {
+                deleted++;
+            }
+        }
+
+        List<Post> newPosts = new ArrayList<>();
+        for (int i = 0; i < POSTS; i++) {
+            if (!cachedPostsByNo.containsKey(posts.get(i).no)) {
+                newPosts.add(posts.get(i));
+            }
+        }
+
+        IntObjectMap<Post> postsByNo = new IntObjectMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            postsByNo.put(posts.get(i).no, posts.get(i));
+        }
+
+        // IntObjectMap can't be iterated, keep the keys in insertion order
+        IntObjectMap<IntArray> replies = new IntObjectMap<>();
+        IntArray replyTargets = new IntArray();
+        for (int i = 0; i < POSTS; i++) {
+            Post post = posts.get(i);
+            for (int j = 0; j < post.repliesTo.size(); j++) {
+                int replyTo = post.repliesTo.get(j);
+                IntArray value = replies.get(replyTo);
+                if (value == null) {
+                    value = new IntArray(3);
+                    replies.put(replyTo, value);
+                    replyTargets.add(replyTo);
+                }
+                value.add(post.no);
+            }
+        }
+
+        IntArray repliesFrom = new IntArray();
+        for (int i = 0; i < replyTargets.size(); i++) {
+            int target = replyTargets.get(i);
+            if (postsByNo.get(target) != null) {
+                IntArray value = replies.get(target);
+                repliesFrom.clear();
+                for (int j = 0; j < value.size(); j++) {
+                    repliesFrom.add(value.get(j));
+                }
+            }
+        }
+
+        if (deleted + newPosts.size() < 0) {
+            Logger.e(TAG, "Unreachable, keeps the results alive");
+        }
+    }
+}
@@ -48,6 +48,8 @@ public class TestActivity extends Activity implements View.OnClickListener {
     private Button simpleTest;
     private Button cacheTest;
     private Button timeoutTest;
+    private Button replyGraphBenchmark;
+    private Button hotPathBenchmarks;
 
     private FileCache fileCache;
 
@@ -85,11 +87,23 @@ public class TestActivity extends Activity implements View.OnClickListener {
         timeoutTest.setOnClickListener(this);
         linearLayout.addView(timeoutTest);
 
+        replyGraphBenchmark = new Button(this);
+        replyGraphBenchmark.setText("Benchmark reply graph allocations");
+        replyGraphBenchmark.setOnClickListener(this);
+        linearLayout.addView(replyGraphBenchmark);
+
+        if (DebugBenchmarks.AVAILABLE) {
+            hotPathBenchmarks = new Button(this);
+            hotPathBenchmarks.setText("Benchmark parsing and filtering");
+            hotPathBenchmarks.setOnClickListener(this);
+            linearLayout.addView(hotPathBenchmarks);
+        }
+
         setContentView(linearLayout);
 
         File cacheDir = getExternalCacheDir() != null ? getExternalCacheDir() : getCacheDir();
         File fileCacheDir = new File(cacheDir, "filecache");
-        fileCache = new FileCache(fileCacheDir, 50 * 1024 * 1024, Chan.getInstance().getUserAgent());
+        fileCache = new FileCache(fileCacheDir, 50 * 1024 * 1024, Chan.getInstance().getUserAgent(), Chan.getHttpClient());
     }
 
     @Override
@@ -104,6 +118,10 @@ public class TestActivity extends Activity implements View.OnClickListener {
             testCache();
         } else if (v == timeoutTest) {
             testTimeout();
+        } else if (v == replyGraphBenchmark) {
+            new ReplyGraphBenchmark().run();
+        } else if (v == hotPathBenchmarks) {
+            DebugBenchmarks.runHotPathBenchmarks(this);
         }
     }
 
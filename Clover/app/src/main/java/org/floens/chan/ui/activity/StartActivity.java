@@ -28,9 +28,11 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 
 import org.floens.chan.Chan;
 import org.floens.chan.R;
@@ -55,6 +57,7 @@ import org.floens.chan.ui.helper.PreviousVersionHandler;
 import org.floens.chan.ui.helper.RuntimePermissionsHelper;
 import org.floens.chan.ui.state.ChanState;
 import org.floens.chan.ui.theme.ThemeHelper;
+import org.floens.chan.ui.view.PerformanceOverlayView;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
 
@@ -74,6 +77,8 @@ public class StartActivity extends AppCompatActivity implements NfcAdapter.Creat
     private NavigationController mainNavigationController;
     private BrowseController browseController;
 
+    private PerformanceOverlayView performanceOverlay;
+
     private ImagePickDelegate imagePickDelegate;
     private RuntimePermissionsHelper runtimePermissionsHelper;
 
@@ -102,6 +107,8 @@ public class StartActivity extends AppCompatActivity implements NfcAdapter.Creat
         setContentView(drawerController.view);
         addController(drawerController);
 
+        setPerformanceOverlay(ChanSettings.developerPerformanceOverlay.get());
+
         // Prevent overdraw
         // Do this after setContentView, or the decor creating will reset the background to a default non-null drawable
         getWindow().setBackgroundDrawable(null);
@@ -316,6 +323,11 @@ public class StartActivity extends AppCompatActivity implements NfcAdapter.Creat
 
     public void addController(Controller controller) {
         stack.add(controller);
+
+        if (performanceOverlay != null) {
+            // Presented controllers are added to the content view after the overlay, keep it on top
+            performanceOverlay.bringToFront();
+        }
     }
 
     public void removeController(Controller controller) {
@@ -326,6 +338,20 @@ public class StartActivity extends AppCompatActivity implements NfcAdapter.Creat
         return contentView;
     }
 
+    /**
+     * Show or hide the {@link PerformanceOverlayView} on top of the controllers.
+     */
+    public void setPerformanceOverlay(boolean show) {
+        if (show && performanceOverlay == null) {
+            performanceOverlay = new PerformanceOverlayView(this);
+            contentView.addView(performanceOverlay, new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM | Gravity.LEFT));
+        } else if (!show && performanceOverlay != null) {
+            contentView.removeView(performanceOverlay);
+            performanceOverlay = null;
+        }
+    }
+
     public ImagePickDelegate getImagePickDelegate() {
         return imagePickDelegate;
     }
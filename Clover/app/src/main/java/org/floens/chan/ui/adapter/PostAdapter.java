@@ -17,6 +17,7 @@
  */
 package org.floens.chan.ui.adapter;
 
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,11 +28,17 @@ import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.ui.cell.PostCell;
+import org.floens.chan.ui.cell.PostCellData;
 import org.floens.chan.ui.cell.PostCellInterface;
 import org.floens.chan.ui.cell.ThreadStatusCell;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.floens.chan.utils.AndroidUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final int TYPE_POST = 0;
@@ -39,6 +46,14 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final int TYPE_POST_STUB = 2;
     private static final int TYPE_LAST_SEEN = 3;
 
+    private static final long ID_STATUS = -1;
+    private static final long ID_LAST_SEEN = -2;
+
+    // Payload for a post that only changed its highlighted or selected state
+    private static final Object PAYLOAD_HIGHLIGHT = new Object();
+
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+
     private final PostAdapterCallback postAdapterCallback;
     private final PostCellInterface.PostCellCallback postCellCallback;
     private RecyclerView recyclerView;
@@ -46,6 +61,11 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private final ThreadStatusCell.Callback statusCellCallback;
     private final List<Post> sourceList = new ArrayList<>();
     private final List<Post> displayList = new ArrayList<>();
+    // Post content versions at the time displayList was set, to find the posts that changed
+    private int[] displayVersions = new int[0];
+    private PostsFilter displayFilter;
+    // Incremented for every new list, a diff is only applied when no newer list was set in the meantime
+    private int diffGeneration;
     private String error = null;
     private Post highlightedPost;
     private String highlightedPostId;
@@ -54,6 +74,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private int selectedPost = -1;
     private int lastSeenIndicatorPosition = -1;
     private boolean bound;
+    private boolean timeTickScheduled;
 
     private ChanSettings.PostViewMode postViewMode;
 
@@ -66,6 +87,18 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         setHasStableIds(true);
     }
 
+    // Refreshes the relative times of the shown posts once per tick, while a thread is shown in list mode
+    private final Runnable timeTick = new Runnable() {
+        @Override
+        public void run() {
+            timeTickScheduled = false;
+            if (bound && postViewMode == ChanSettings.PostViewMode.LIST) {
+                refreshShownTimes();
+                scheduleTimeTick();
+            }
+        }
+    };
+
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         switch (viewType) {
@@ -96,6 +129,16 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        if (!payloads.isEmpty() && holder instanceof PostViewHolder && onlyHighlightPayloads(payloads)) {
+            Post post = displayList.get(getPostPosition(position));
+            ((PostViewHolder) holder).postView.setHighlighted(isHighlighted(post), post.no == selectedPost);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
         int itemViewType = getItemViewType(position);
@@ -104,9 +147,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             case TYPE_POST_STUB:
                 PostViewHolder postViewHolder = (PostViewHolder) holder;
                 Post post = displayList.get(getPostPosition(position));
-                boolean highlight = post == highlightedPost || post.id.equals(highlightedPostId) || post.no == highlightedPostNo ||
-                        post.tripcode.equals(highlightedPostTripcode);
-                postViewHolder.postView.setPost(null, post, postCellCallback, highlight, post.no == selectedPost, -1, true, postViewMode);
+                postViewHolder.postView.setPost(null, post, postCellCallback, isHighlighted(post), post.no == selectedPost, -1, true, postViewMode);
                 break;
             case TYPE_STATUS:
                 ((StatusViewHolder) holder).threadStatusCell.update();
@@ -118,17 +159,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     @Override
     public int getItemCount() {
-        int size = displayList.size();
-
-        if (showStatusView()) {
-            size++;
-        }
-
-        if (lastSeenIndicatorPosition >= 0) {
-            size++;
-        }
-
-        return size;
+        return itemCount(displayList, lastSeenIndicatorPosition, showStatusView());
     }
 
     @Override
@@ -149,21 +180,15 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     @Override
     public long getItemId(int position) {
-        int itemViewType = getItemViewType(position);
-        if (itemViewType == TYPE_STATUS) {
-            return -1;
-        } else if (itemViewType == TYPE_LAST_SEEN) {
-            return -2;
-        } else {
-            Post post = displayList.get(getPostPosition(position));
-            int repliesFromSize;
-            synchronized (post.repliesFrom) {
-                repliesFromSize = post.repliesFrom.size();
-            }
-            return ((long) repliesFromSize << 32L) + (long) post.no;
-        }
+        return itemId(displayList, lastSeenIndicatorPosition, showStatusView(), position);
     }
 
+    /**
+     * Show the posts of the thread. When only the thread changed, the changes to the shown list are calculated
+     * on a background thread and dispatched as insertions, removals and changes of the posts that changed, so that
+     * the other cells are not rebound and RecyclerView can animate. The list is replaced right away when
+     * nothing was shown yet, or when the filter changed.
+     */
     public void setThread(ChanThread thread, PostsFilter filter) {
         bound = true;
         showError(null);
@@ -171,23 +196,44 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         sourceList.clear();
         sourceList.addAll(thread.posts);
 
-        displayList.clear();
-        displayList.addAll(filter.apply(sourceList));
-
-        lastSeenIndicatorPosition = -1;
-        if (thread.loadable.lastViewed >= 0) {
-            // Do not process the last post, the indicator does not have to appear at the bottom
-            for (int i = 0, displayListSize = displayList.size() - 1; i < displayListSize; i++) {
-                Post post = displayList.get(i);
-                if (post.no == thread.loadable.lastViewed) {
-                    lastSeenIndicatorPosition = i + 1;
-                    break;
-                }
-            }
+        final List<Post> newList = filter.apply(sourceList);
+        if (postViewMode == ChanSettings.PostViewMode.LIST) {
+            // Ready the cell texts before the cells are bound
+            PostCellData.precompute(newList, ThemeHelper.theme(), postAdapterCallback.getLoadable().isThreadMode());
+            scheduleTimeTick();
+        }
+        final int[] newVersions = contentVersions(newList);
+        final int newLastSeen = findLastSeenIndicatorPosition(newList, thread.loadable.lastViewed);
+        final int generation = ++diffGeneration;
+
+        if (displayList.isEmpty() || !filter.equals(displayFilter)) {
+            displayFilter = filter;
+            setDisplayList(newList, newVersions, newLastSeen);
+            notifyDataSetChanged();
+            return;
         }
 
-        // Update all, recyclerview will figure out all the animations
-        notifyDataSetChanged();
+        final List<Post> oldList = new ArrayList<>(displayList);
+        final int[] oldVersions = displayVersions;
+        final int oldLastSeen = lastSeenIndicatorPosition;
+        final boolean showStatus = showStatusView();
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ItemsDiff(
+                        oldList, oldVersions, oldLastSeen, newList, newVersions, newLastSeen, showStatus));
+
+                AndroidUtils.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (bound && generation == diffGeneration) {
+                            setDisplayList(newList, newVersions, newLastSeen);
+                            result.dispatchUpdatesTo(PostAdapter.this);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     public List<Post> getDisplayList() {
@@ -195,6 +241,9 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     }
 
     public void cleanup() {
+        // Drop pending diffs, the next thread is shown without animating from this one
+        diffGeneration++;
+        displayFilter = null;
         highlightedPost = null;
         highlightedPostId = null;
         highlightedPostNo = -1;
@@ -203,6 +252,8 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         lastSeenIndicatorPosition = -1;
         error = null;
         bound = false;
+        recyclerView.removeCallbacks(timeTick);
+        timeTickScheduled = false;
     }
 
     public void showError(String error) {
@@ -221,46 +272,79 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     }
 
     public void highlightPost(Post post) {
+        boolean[] before = highlightStates();
         highlightedPost = post;
         highlightedPostId = null;
         highlightedPostNo = -1;
         highlightedPostTripcode = null;
-        notifyDataSetChanged();
+        notifyHighlightChanges(before);
     }
 
     public void highlightPostId(String id) {
+        boolean[] before = highlightStates();
         highlightedPost = null;
         highlightedPostId = id;
         highlightedPostNo = -1;
         highlightedPostTripcode = null;
-        notifyDataSetChanged();
+        notifyHighlightChanges(before);
     }
 
     public void highlightPostTripcode(String tripcode) {
+        boolean[] before = highlightStates();
         highlightedPost = null;
         highlightedPostId = null;
         highlightedPostNo = -1;
         highlightedPostTripcode = tripcode;
-        notifyDataSetChanged();
+        notifyHighlightChanges(before);
     }
 
     public void highlightPostNo(int no) {
+        boolean[] before = highlightStates();
         highlightedPost = null;
         highlightedPostId = null;
         highlightedPostNo = no;
         highlightedPostTripcode = null;
-        notifyDataSetChanged();
+        notifyHighlightChanges(before);
     }
 
     public void selectPost(int no) {
+        boolean[] before = highlightStates();
         selectedPost = no;
-        notifyDataSetChanged();
+        notifyHighlightChanges(before);
     }
 
     public void setPostViewMode(ChanSettings.PostViewMode postViewMode) {
         this.postViewMode = postViewMode;
     }
 
+    /**
+     * Build the title layouts of the posts at the adapter positions ahead of their bind, see
+     * {@link PostCell#prefetchTitleLayouts}. Only for the list mode.
+     *
+     * @param from  first adapter position, inclusive
+     * @param count number of positions, negative to go back from the position
+     */
+    public void prefetchLayouts(int from, int count) {
+        if (postViewMode != ChanSettings.PostViewMode.LIST) {
+            return;
+        }
+
+        int step = count < 0 ? -1 : 1;
+        List<Post> posts = new ArrayList<>(Math.abs(count));
+        for (int i = 0, position = from; i < Math.abs(count); i++, position += step) {
+            if (position < 0 || position >= getItemCount()) {
+                break;
+            }
+            if (getItemViewType(position) == TYPE_POST) {
+                posts.add(displayList.get(getPostPosition(position)));
+            }
+        }
+
+        if (!posts.isEmpty()) {
+            PostCell.prefetchTitleLayouts(posts, ThemeHelper.theme(), postAdapterCallback.getLoadable().isThreadMode());
+        }
+    }
+
     public int getPostPosition(int position) {
         int postPosition = position;
         if (lastSeenIndicatorPosition >= 0 && position > lastSeenIndicatorPosition) {
@@ -281,6 +365,180 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         return postAdapterCallback.getLoadable().isThreadMode();
     }
 
+    private void setDisplayList(List<Post> posts, int[] versions, int lastSeenIndicatorPosition) {
+        displayList.clear();
+        displayList.addAll(posts);
+        displayVersions = versions;
+        this.lastSeenIndicatorPosition = lastSeenIndicatorPosition;
+    }
+
+    private boolean isHighlighted(Post post) {
+        return post == highlightedPost || post.id.equals(highlightedPostId) || post.no == highlightedPostNo ||
+                post.tripcode.equals(highlightedPostTripcode);
+    }
+
+    // Highlighted and selected state of every shown post, two entries per post
+    private boolean[] highlightStates() {
+        boolean[] states = new boolean[displayList.size() * 2];
+        for (int i = 0; i < displayList.size(); i++) {
+            Post post = displayList.get(i);
+            states[i * 2] = isHighlighted(post);
+            states[i * 2 + 1] = post.no == selectedPost;
+        }
+        return states;
+    }
+
+    private void notifyHighlightChanges(boolean[] before) {
+        boolean[] after = highlightStates();
+        for (int i = 0; i < displayList.size(); i++) {
+            if (before[i * 2] != after[i * 2] || before[i * 2 + 1] != after[i * 2 + 1]) {
+                int position = lastSeenIndicatorPosition >= 0 && i >= lastSeenIndicatorPosition ? i + 1 : i;
+                notifyItemChanged(position, PAYLOAD_HIGHLIGHT);
+            }
+        }
+    }
+
+    private void scheduleTimeTick() {
+        if (!timeTickScheduled) {
+            timeTickScheduled = true;
+            recyclerView.postDelayed(timeTick, PostCellData.RELATIVE_TIME_TICK);
+        }
+    }
+
+    private void refreshShownTimes() {
+        List<Post> shown = new ArrayList<>();
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            if (child instanceof PostCell && ((PostCell) child).getPost() != null) {
+                shown.add(((PostCell) child).getPost());
+            }
+        }
+
+        PostCellData.refreshTimes(shown, ThemeHelper.theme(), postAdapterCallback.getLoadable().isThreadMode(), new Runnable() {
+            @Override
+            public void run() {
+                if (bound) {
+                    for (int i = 0; i < recyclerView.getChildCount(); i++) {
+                        View child = recyclerView.getChildAt(i);
+                        if (child instanceof PostCell) {
+                            ((PostCell) child).refreshTitle();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean onlyHighlightPayloads(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_HIGHLIGHT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] contentVersions(List<Post> posts) {
+        int[] versions = new int[posts.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = posts.get(i).getContentVersion();
+        }
+        return versions;
+    }
+
+    private static int findLastSeenIndicatorPosition(List<Post> posts, int lastViewed) {
+        if (lastViewed >= 0) {
+            // Do not process the last post, the indicator does not have to appear at the bottom
+            for (int i = 0, size = posts.size() - 1; i < size; i++) {
+                if (posts.get(i).no == lastViewed) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int itemCount(List<Post> posts, int lastSeenIndicatorPosition, boolean showStatus) {
+        int size = posts.size();
+
+        if (showStatus) {
+            size++;
+        }
+
+        if (lastSeenIndicatorPosition >= 0) {
+            size++;
+        }
+
+        return size;
+    }
+
+    private static long itemId(List<Post> posts, int lastSeenIndicatorPosition, boolean showStatus, int position) {
+        if (position == lastSeenIndicatorPosition) {
+            return ID_LAST_SEEN;
+        } else if (showStatus && position == itemCount(posts, lastSeenIndicatorPosition, true) - 1) {
+            return ID_STATUS;
+        } else {
+            int postPosition = lastSeenIndicatorPosition >= 0 && position > lastSeenIndicatorPosition ? position - 1 : position;
+            return posts.get(postPosition).no;
+        }
+    }
+
+    /**
+     * Items of the adapter before and after a refresh: posts are the same when they have the same number, and
+     * unchanged when their content version is the same. The status cell is updated on every refresh.
+     */
+    private static class ItemsDiff extends DiffUtil.Callback {
+        private final List<Post> oldPosts;
+        private final int[] oldVersions;
+        private final int oldLastSeen;
+        private final List<Post> newPosts;
+        private final int[] newVersions;
+        private final int newLastSeen;
+        private final boolean showStatus;
+
+        public ItemsDiff(List<Post> oldPosts, int[] oldVersions, int oldLastSeen,
+                         List<Post> newPosts, int[] newVersions, int newLastSeen, boolean showStatus) {
+            this.oldPosts = oldPosts;
+            this.oldVersions = oldVersions;
+            this.oldLastSeen = oldLastSeen;
+            this.newPosts = newPosts;
+            this.newVersions = newVersions;
+            this.newLastSeen = newLastSeen;
+            this.showStatus = showStatus;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return itemCount(oldPosts, oldLastSeen, showStatus);
+        }
+
+        @Override
+        public int getNewListSize() {
+            return itemCount(newPosts, newLastSeen, showStatus);
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return itemId(oldPosts, oldLastSeen, showStatus, oldItemPosition) ==
+                    itemId(newPosts, newLastSeen, showStatus, newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            long id = itemId(oldPosts, oldLastSeen, showStatus, oldItemPosition);
+            if (id == ID_STATUS) {
+                return false;
+            } else if (id == ID_LAST_SEEN) {
+                return true;
+            } else {
+                int oldPostPosition = oldLastSeen >= 0 && oldItemPosition > oldLastSeen ? oldItemPosition - 1 : oldItemPosition;
+                int newPostPosition = newLastSeen >= 0 && newItemPosition > newLastSeen ? newItemPosition - 1 : newItemPosition;
+                return oldPosts.get(oldPostPosition) == newPosts.get(newPostPosition) &&
+                        oldVersions[oldPostPosition] == newVersions[newPostPosition];
+            }
+        }
+    }
+
     public static class PostViewHolder extends RecyclerView.ViewHolder {
         private PostCellInterface postView;
 
@@ -133,6 +133,26 @@ public class PostsFilter {
         return posts;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        PostsFilter other = (PostsFilter) o;
+        return order == other.order && TextUtils.equals(query, other.query);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = order != null ? order.hashCode() : 0;
+        result = 31 * result + (query != null ? query.hashCode() : 0);
+        return result;
+    }
+
     public enum Order {
         BUMP("bump"),
         REPLY("reply"),
@@ -50,6 +50,7 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
     private boolean bound;
     private Theme theme;
     private Post post;
+    private int contentVersion;
     private PostCellInterface.PostCellCallback callback;
 
     private FixedRatioLinearLayout content;
@@ -147,7 +148,8 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
 
     public void setPost(Theme theme, final Post post, PostCellInterface.PostCellCallback callback,
                         boolean highlighted, boolean selected, int markedNo, boolean showDivider, ChanSettings.PostViewMode postViewMode) {
-        if (this.post == post) {
+        int contentVersion = post.getContentVersion();
+        if (this.post == post && this.contentVersion == contentVersion) {
             return;
         }
 
@@ -163,10 +165,15 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
         this.theme = theme;
         this.post = post;
         this.callback = callback;
+        this.contentVersion = contentVersion;
 
         bindPost(theme, post);
     }
 
+    @Override
+    public void setHighlighted(boolean highlighted, boolean selected) {
+    }
+
     public Post getPost() {
         return post;
     }
@@ -31,18 +31,15 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 import android.text.Layout;
 import android.text.Spannable;
-import android.text.SpannableString;
 import android.text.Spanned;
 import android.text.TextPaint;
-import android.text.TextUtils;
-import android.text.format.DateUtils;
 import android.text.method.LinkMovementMethod;
 import android.text.style.BackgroundColorSpan;
 import android.text.style.ClickableSpan;
-import android.text.style.UnderlineSpan;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
@@ -54,12 +51,9 @@ import com.android.volley.toolbox.ImageLoader;
 import org.floens.chan.Chan;
 import org.floens.chan.R;
 import org.floens.chan.core.model.Post;
-import org.floens.chan.core.model.PostImage;
 import org.floens.chan.core.model.PostLinkable;
+import org.floens.chan.core.net.BitmapLruImageCache;
 import org.floens.chan.core.settings.ChanSettings;
-import org.floens.chan.ui.helper.PostHelper;
-import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
-import org.floens.chan.ui.span.ForegroundColorSpanHashed;
 import org.floens.chan.ui.text.FastTextView;
 import org.floens.chan.ui.text.FastTextViewMovementMethod;
 import org.floens.chan.ui.theme.Theme;
@@ -69,22 +63,22 @@ import org.floens.chan.ui.view.FloatingMenuItem;
 import org.floens.chan.ui.view.PostImageThumbnailView;
 import org.floens.chan.ui.view.ThumbnailView;
 import org.floens.chan.utils.AndroidUtils;
-import org.floens.chan.utils.Time;
 
-import java.text.BreakIterator;
 import java.util.ArrayList;
 import java.util.List;
 
 import static android.text.TextUtils.isEmpty;
 import static org.floens.chan.utils.AndroidUtils.ROBOTO_CONDENSED_REGULAR;
 import static org.floens.chan.utils.AndroidUtils.dp;
-import static org.floens.chan.utils.AndroidUtils.getString;
 import static org.floens.chan.utils.AndroidUtils.setRoundItemBackground;
 import static org.floens.chan.utils.AndroidUtils.sp;
 
 public class PostCell extends LinearLayout implements PostCellInterface {
     private static final String TAG = "PostCell";
-    private static final int COMMENT_MAX_LENGTH_BOARD = 350;
+
+    // Title specs of the last measured cells with and without a thumbnail, for prefetching the title layouts
+    private static FastTextView.LayoutSpec titleSpecThumbnail;
+    private static FastTextView.LayoutSpec titleSpecNoThumbnail;
 
     private PostImageThumbnailView thumbnailView;
     private FastTextView title;
@@ -96,7 +90,6 @@ public class PostCell extends LinearLayout implements PostCellInterface {
     private View filterMatchColor;
 
     private boolean commentClickable = false;
-    private int detailsSizePx;
     private int countrySizePx;
     private int paddingPx;
     private boolean threadMode;
@@ -109,6 +102,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
     private boolean highlighted;
     private boolean selected;
     private int markedNo;
+    private int contentVersion;
     private boolean showDivider;
 
     private OnClickListener selfClicked = new OnClickListener() {
@@ -151,7 +145,6 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
         int textSizeSp = Integer.parseInt(ChanSettings.fontSize.get());
         paddingPx = dp(textSizeSp - 6);
-        detailsSizePx = sp(textSizeSp - 4);
         title.setTextSize(textSizeSp);
         title.setPadding(paddingPx, paddingPx, dp(52), 0);
 
@@ -233,6 +226,50 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         setOnClickListener(selfClicked);
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        // The filter match color makes the title narrower, don't use those
+        if (bound && filterMatchColor.getVisibility() == View.GONE) {
+            FastTextView.LayoutSpec spec = title.getLayoutSpec();
+            if (spec != null) {
+                if (thumbnailView.getVisibility() == View.VISIBLE) {
+                    titleSpecThumbnail = spec;
+                } else {
+                    titleSpecNoThumbnail = spec;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the title layouts of posts that will be bound soon on a background thread. Only done for posts
+     * that have their {@link PostCellData} ready, and after a cell of the same kind was measured.
+     */
+    public static void prefetchTitleLayouts(List<Post> posts, Theme theme, boolean threadMode) {
+        List<CharSequence> texts = new ArrayList<>(posts.size());
+        List<FastTextView.LayoutSpec> specs = new ArrayList<>(posts.size());
+        boolean textOnly = ChanSettings.textOnly.get();
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (post.filterHighlightedColor != 0) {
+                continue;
+            }
+
+            FastTextView.LayoutSpec spec = post.hasImage && !textOnly ? titleSpecThumbnail : titleSpecNoThumbnail;
+            PostCellData data = PostCellData.peek(post, theme, threadMode);
+            if (spec != null && data != null) {
+                texts.add(data.title);
+                specs.add(spec);
+            }
+        }
+
+        if (!texts.isEmpty()) {
+            FastTextView.prefetchLayouts(texts, specs);
+        }
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
@@ -253,7 +290,9 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
     public void setPost(Theme theme, final Post post, PostCellInterface.PostCellCallback callback,
                         boolean highlighted, boolean selected, int markedNo, boolean showDivider, ChanSettings.PostViewMode postViewMode) {
-        if (this.post == post && this.highlighted == highlighted && this.selected == selected && this.markedNo == markedNo && this.showDivider == showDivider) {
+        int contentVersion = post.getContentVersion();
+        if (this.post == post && this.contentVersion == contentVersion && this.highlighted == highlighted &&
+                this.selected == selected && this.markedNo == markedNo && this.showDivider == showDivider) {
             return;
         }
 
@@ -273,14 +312,36 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         this.selected = selected;
         this.markedNo = markedNo;
         this.showDivider = showDivider;
+        this.contentVersion = contentVersion;
 
         bindPost(theme, post);
     }
 
+    @Override
+    public void setHighlighted(boolean highlighted, boolean selected) {
+        if (this.highlighted != highlighted || this.selected != selected) {
+            this.highlighted = highlighted;
+            this.selected = selected;
+
+            if (bound) {
+                setPostBackground(theme, post);
+            }
+        }
+    }
+
     public Post getPost() {
         return post;
     }
 
+    /**
+     * Show the title again, after {@link PostCellData#refreshTimes} rebuilt it for a newer relative time.
+     */
+    public void refreshTitle() {
+        if (bound) {
+            title.setText(PostCellData.get(post, theme, threadMode).title);
+        }
+    }
+
     public ThumbnailView getThumbnailView() {
         return thumbnailView;
     }
@@ -304,17 +365,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             replies.setBackgroundResource(0);
         }
 
-        if (highlighted) {
-            setBackgroundColor(theme.highlightedColor);
-        } else if (post.isSavedReply) {
-            setBackgroundColor(theme.savedReplyColor);
-        } else if (selected) {
-            setBackgroundColor(theme.selectedColor);
-        } else if (threadMode) {
-            setBackgroundResource(0);
-        } else {
-            setBackgroundResource(R.drawable.item_background);
-        }
+        setPostBackground(theme, post);
 
         if (post.filterHighlightedColor != 0) {
             filterMatchColor.setVisibility(View.VISIBLE);
@@ -331,67 +382,9 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             thumbnailView.setPostImage(null, 0, 0);
         }
 
-        List<CharSequence> titleParts = new ArrayList<>(5);
-
-        if (post.subjectSpan != null) {
-            titleParts.add(post.subjectSpan);
-            titleParts.add("\n");
-        }
-
-        titleParts.add(post.nameTripcodeIdCapcodeSpan);
-
-        CharSequence time;
-        if (ChanSettings.postFullDate.get()) {
-            time = PostHelper.getLocalDate(post);
-        } else {
-            // Disabled for performance reasons
-            // Force the relative date to use the english locale, and restore the previous one.
-            /*Configuration c = Resources.getSystem().getConfiguration();
-            Locale previousLocale = c.locale;
-            c.locale = Locale.ENGLISH;
-            Resources.getSystem().updateConfiguration(c, null);
-            time = DateUtils.getRelativeTimeSpanString(post.time * 1000L, Time.get(), DateUtils.SECOND_IN_MILLIS, 0);
-            c.locale = previousLocale;
-            Resources.getSystem().updateConfiguration(c, null);*/
-            time = DateUtils.getRelativeTimeSpanString(post.time * 1000L, Time.get(), DateUtils.SECOND_IN_MILLIS, 0);
-        }
-
-        String noText = "No." + post.no;
-        SpannableString date = new SpannableString(noText + " " + time);
-        date.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, date.length(), 0);
-        date.setSpan(new AbsoluteSizeSpanHashed(detailsSizePx), 0, date.length(), 0);
-
+        PostCellData data = PostCellData.get(post, theme, threadMode);
+        title.setText(data.title);
         boolean noClickable = ChanSettings.tapNoReply.get();
-        if (noClickable) {
-            date.setSpan(new NoClickableSpan(), 0, noText.length(), 0);
-        }
-
-        titleParts.add(date);
-
-        if (post.hasImage) {
-            PostImage image = post.image;
-
-            boolean postFileName = ChanSettings.postFilename.get();
-            if (postFileName) {
-                String filename = image.spoiler ? getString(R.string.image_spoiler_filename) : image.filename + "." + image.extension;
-                SpannableString fileInfo = new SpannableString("\n" + filename);
-                fileInfo.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, fileInfo.length(), 0);
-                fileInfo.setSpan(new AbsoluteSizeSpanHashed(detailsSizePx), 0, fileInfo.length(), 0);
-                fileInfo.setSpan(new UnderlineSpan(), 0, fileInfo.length(), 0);
-                titleParts.add(fileInfo);
-            }
-
-            if (ChanSettings.postFileInfo.get()) {
-                SpannableString fileInfo = new SpannableString((postFileName ? " " : "\n") + image.extension.toUpperCase() + " " +
-                        AndroidUtils.getReadableFileSize(image.size, false) + " " +
-                        image.imageWidth + "x" + image.imageHeight);
-                fileInfo.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, fileInfo.length(), 0);
-                fileInfo.setSpan(new AbsoluteSizeSpanHashed(detailsSizePx), 0, fileInfo.length(), 0);
-                titleParts.add(fileInfo);
-            }
-        }
-
-        title.setText(TextUtils.concat(titleParts.toArray(new CharSequence[titleParts.size()])));
 
         icons.edit();
         icons.set(PostIcons.STICKY, post.sticky);
@@ -408,16 +401,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
         icons.apply();
 
-        CharSequence commentText;
-        if (post.comment.length() > COMMENT_MAX_LENGTH_BOARD && !threadMode) {
-            BreakIterator bi = BreakIterator.getWordInstance();
-            bi.setText(post.comment.toString());
-            int precedingBoundary = bi.preceding(COMMENT_MAX_LENGTH_BOARD);
-            // Fallback to old method in case the comment does not have any spaces/individual words
-            commentText = precedingBoundary > 0 ? post.comment.subSequence(0, precedingBoundary) : post.comment.subSequence(0, COMMENT_MAX_LENGTH_BOARD);
-        } else {
-            commentText = post.comment;
-        }
+        CharSequence commentText = data.comment;
 
         comment.setText(commentText);
         comment.setVisibility(isEmpty(commentText) && !post.hasImage ? GONE : VISIBLE);
@@ -466,6 +450,20 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         divider.setVisibility(showDivider ? VISIBLE : GONE);
     }
 
+    private void setPostBackground(Theme theme, Post post) {
+        if (highlighted) {
+            setBackgroundColor(theme.highlightedColor);
+        } else if (post.isSavedReply) {
+            setBackgroundColor(theme.savedReplyColor);
+        } else if (selected) {
+            setBackgroundColor(theme.selectedColor);
+        } else if (threadMode) {
+            setBackgroundResource(0);
+        } else {
+            setBackgroundResource(R.drawable.item_background);
+        }
+    }
+
     private void unbindPost(Post post) {
         bound = false;
 
@@ -579,10 +577,24 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         }
     }
 
-    private class NoClickableSpan extends ClickableSpan {
+    /**
+     * Clickable post number in the title. The title is shared between cells, so the cell is looked up from the
+     * clicked view.
+     */
+    static class NoClickableSpan extends ClickableSpan {
         @Override
         public void onClick(View widget) {
-            callback.onPostNoClicked(post);
+            ViewParent parent = widget.getParent();
+            while (parent != null && !(parent instanceof PostCell)) {
+                parent = parent.getParent();
+            }
+
+            if (parent != null) {
+                PostCell cell = (PostCell) parent;
+                if (cell.bound) {
+                    cell.callback.onPostNoClicked(cell.post);
+                }
+            }
         }
 
         @Override
@@ -621,6 +633,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         private Rect textRect = new Rect();
         private ImageLoader.ImageContainer countryIconRequest;
         private Bitmap countryIcon;
+        private final BitmapLruImageCache.Holder countryIconHolder = new BitmapLruImageCache.Holder(Chan.getImageCache());
         private String countryName;
         private int countryTextColor;
         private int countryTextSize;
@@ -678,6 +691,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
                 public void onResponse(ImageLoader.ImageContainer response, boolean isImmediate) {
                     if (response.getBitmap() != null) {
                         countryIcon = response.getBitmap();
+                        countryIconHolder.set(countryIcon);
 
                         invalidate();
                     }
@@ -694,6 +708,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
                 countryIconRequest.cancelRequest();
                 countryIconRequest = null;
                 countryIcon = null;
+                countryIconHolder.clear();
                 countryName = null;
                 countryTextColor = 0;
             }
@@ -0,0 +1,301 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.ui.cell;
+
+import android.text.SpannableString;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.text.style.UnderlineSpan;
+
+import org.floens.chan.R;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.ui.helper.PostHelper;
+import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
+import org.floens.chan.ui.span.ForegroundColorSpanHashed;
+import org.floens.chan.ui.theme.Theme;
+import org.floens.chan.utils.AndroidUtils;
+import org.floens.chan.utils.Time;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.floens.chan.utils.AndroidUtils.getString;
+import static org.floens.chan.utils.AndroidUtils.sp;
+
+/**
+ * The title and comment text of a {@link PostCell}, built ahead of the bind on a background thread with
+ * {@link #precompute(List, Theme, boolean)}, and cached on the post.<br>
+ * The cached data is used as long as the theme, the mode, and the settings that change the text are the same.
+ * Relative times are calculated for a tick of {@link #RELATIVE_TIME_TICK} ms. A data of an older tick is still used,
+ * {@link #refreshTimes(List, Theme, boolean, Runnable)} rebuilds only its title in the background.
+ */
+public class PostCellData {
+    public static final int COMMENT_MAX_LENGTH_BOARD = 350;
+
+    public static final long RELATIVE_TIME_TICK = 30 * 1000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Config config;
+    private final long tick;
+
+    public final CharSequence title;
+    public final CharSequence comment;
+
+    private PostCellData(Config config, long tick, CharSequence title, CharSequence comment) {
+        this.config = config;
+        this.tick = tick;
+        this.title = title;
+        this.comment = comment;
+    }
+
+    /**
+     * Get the data of the post from the cache, or build it now when it is not cached or was built with other
+     * settings. The relative time may be of an older tick. Call on the main thread.
+     */
+    public static PostCellData get(Post post, Theme theme, boolean threadMode) {
+        Config config = Config.current(theme, threadMode);
+
+        PostCellData data = cached(post, config);
+        if (data == null) {
+            data = build(post, config, currentTick(config));
+            post.cellData = data;
+        }
+        return data;
+    }
+
+    /**
+     * Get the data of the post from the cache without building it.
+     *
+     * @return the cached data, or null when it is not cached or was built with other settings
+     */
+    public static PostCellData peek(Post post, Theme theme, boolean threadMode) {
+        return cached(post, Config.current(theme, threadMode));
+    }
+
+    /**
+     * Build the data of the posts that don't have fresh data on a background thread. Call on the main thread,
+     * the settings are read here.
+     *
+     * @param posts posts to build, copied
+     */
+    public static void precompute(List<Post> posts, Theme theme, boolean threadMode) {
+        final Config config = Config.current(theme, threadMode);
+        final List<Post> toBuild = new ArrayList<>(posts);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long tick = currentTick(config);
+                for (int i = 0; i < toBuild.size(); i++) {
+                    Post post = toBuild.get(i);
+                    PostCellData data = cached(post, config);
+                    if (data == null) {
+                        post.cellData = build(post, config, tick);
+                    } else if (data.tick != tick) {
+                        post.cellData = new PostCellData(config, tick, buildTitle(post, config, tick), data.comment);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuild the titles of the posts whose relative time is of an older tick on a background thread, the comments are
+     * kept. Call on the main thread, once per {@link #RELATIVE_TIME_TICK}.
+     *
+     * @param posts     posts to refresh, copied
+     * @param refreshed run on the main thread when any title was rebuilt
+     */
+    public static void refreshTimes(List<Post> posts, Theme theme, boolean threadMode, final Runnable refreshed) {
+        final Config config = Config.current(theme, threadMode);
+        if (config.fullDate) {
+            return;
+        }
+
+        final List<Post> toRefresh = new ArrayList<>(posts);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long tick = currentTick(config);
+                boolean changed = false;
+                for (int i = 0; i < toRefresh.size(); i++) {
+                    Post post = toRefresh.get(i);
+                    PostCellData data = cached(post, config);
+                    if (data != null && data.tick != tick) {
+                        post.cellData = new PostCellData(config, tick, buildTitle(post, config, tick), data.comment);
+                        changed = true;
+                    }
+                }
+
+                if (changed) {
+                    AndroidUtils.runOnUiThread(refreshed);
+                }
+            }
+        });
+    }
+
+    private static PostCellData cached(Post post, Config config) {
+        Object cellData = post.cellData;
+        if (cellData instanceof PostCellData && ((PostCellData) cellData).config.equals(config)) {
+            return (PostCellData) cellData;
+        }
+        return null;
+    }
+
+    private static long currentTick(Config config) {
+        return config.fullDate ? 0 : Time.get() / RELATIVE_TIME_TICK;
+    }
+
+    private static PostCellData build(Post post, Config config, long tick) {
+        return new PostCellData(config, tick, buildTitle(post, config, tick), buildComment(post, config));
+    }
+
+    private static CharSequence buildTitle(Post post, Config config, long tick) {
+        Theme theme = config.theme;
+
+        List<CharSequence> titleParts = new ArrayList<>(5);
+
+        if (post.subjectSpan != null) {
+            titleParts.add(post.subjectSpan);
+            titleParts.add("\n");
+        }
+
+        titleParts.add(post.nameTripcodeIdCapcodeSpan);
+
+        CharSequence time;
+        if (config.fullDate) {
+            time = PostHelper.getLocalDate(post);
+        } else {
+            time = DateUtils.getRelativeTimeSpanString(post.time * 1000L, tick * RELATIVE_TIME_TICK, DateUtils.SECOND_IN_MILLIS, 0);
+        }
+
+        String noText = "No." + post.no;
+        SpannableString date = new SpannableString(noText + " " + time);
+        date.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, date.length(), 0);
+        date.setSpan(new AbsoluteSizeSpanHashed(config.detailsSizePx), 0, date.length(), 0);
+
+        if (config.noClickable) {
+            date.setSpan(new PostCell.NoClickableSpan(), 0, noText.length(), 0);
+        }
+
+        titleParts.add(date);
+
+        if (post.hasImage) {
+            PostImage image = post.image;
+
+            if (config.fileName) {
+                String filename = image.spoiler ? getString(R.string.image_spoiler_filename) : image.filename + "." + image.extension;
+                SpannableString fileInfo = new SpannableString("\n" + filename);
+                fileInfo.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, fileInfo.length(), 0);
+                fileInfo.setSpan(new AbsoluteSizeSpanHashed(config.detailsSizePx), 0, fileInfo.length(), 0);
+                fileInfo.setSpan(new UnderlineSpan(), 0, fileInfo.length(), 0);
+                titleParts.add(fileInfo);
+            }
+
+            if (config.fileInfo) {
+                SpannableString fileInfo = new SpannableString((config.fileName ? " " : "\n") + image.extension.toUpperCase() + " " +
+                        AndroidUtils.getReadableFileSize(image.size, false) + " " +
+                        image.imageWidth + "x" + image.imageHeight);
+                fileInfo.setSpan(new ForegroundColorSpanHashed(theme.detailsColor), 0, fileInfo.length(), 0);
+                fileInfo.setSpan(new AbsoluteSizeSpanHashed(config.detailsSizePx), 0, fileInfo.length(), 0);
+                titleParts.add(fileInfo);
+            }
+        }
+
+        return TextUtils.concat(titleParts.toArray(new CharSequence[titleParts.size()]));
+    }
+
+    private static CharSequence buildComment(Post post, Config config) {
+        CharSequence comment;
+        if (post.comment.length() > COMMENT_MAX_LENGTH_BOARD && !config.threadMode) {
+            BreakIterator bi = BreakIterator.getWordInstance();
+            bi.setText(post.comment.toString());
+            int precedingBoundary = bi.preceding(COMMENT_MAX_LENGTH_BOARD);
+            // Fallback to old method in case the comment does not have any spaces/individual words
+            comment = precedingBoundary > 0 ? post.comment.subSequence(0, precedingBoundary) : post.comment.subSequence(0, COMMENT_MAX_LENGTH_BOARD);
+        } else {
+            comment = post.comment;
+        }
+        return comment;
+    }
+
+    /**
+     * Everything the data depends on except the post.
+     */
+    private static class Config {
+        private final Theme theme;
+        private final boolean threadMode;
+        private final int detailsSizePx;
+        private final boolean fullDate;
+        private final boolean noClickable;
+        private final boolean fileName;
+        private final boolean fileInfo;
+
+        private Config(Theme theme, boolean threadMode, int detailsSizePx, boolean fullDate, boolean noClickable,
+                       boolean fileName, boolean fileInfo) {
+            this.theme = theme;
+            this.threadMode = threadMode;
+            this.detailsSizePx = detailsSizePx;
+            this.fullDate = fullDate;
+            this.noClickable = noClickable;
+            this.fileName = fileName;
+            this.fileInfo = fileInfo;
+        }
+
+        private static Config current(Theme theme, boolean threadMode) {
+            return new Config(theme, threadMode,
+                    sp(Integer.parseInt(ChanSettings.fontSize.get()) - 4),
+                    ChanSettings.postFullDate.get(),
+                    ChanSettings.tapNoReply.get(),
+                    ChanSettings.postFilename.get(),
+                    ChanSettings.postFileInfo.get());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Config other = (Config) o;
+            return theme == other.theme && threadMode == other.threadMode && detailsSizePx == other.detailsSizePx &&
+                    fullDate == other.fullDate && noClickable == other.noClickable && fileName == other.fileName &&
+                    fileInfo == other.fileInfo;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(theme);
+            result = 31 * result + (threadMode ? 1 : 0);
+            result = 31 * result + detailsSizePx;
+            result = 31 * result + (fullDate ? 1 : 0);
+            result = 31 * result + (noClickable ? 1 : 0);
+            result = 31 * result + (fileName ? 1 : 0);
+            result = 31 * result + (fileInfo ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -30,6 +30,11 @@ import java.util.List;
 public interface PostCellInterface {
     void setPost(Theme theme, Post post, PostCellCallback callback, boolean highlighted, boolean selected, int markedNo, boolean showDivider, ChanSettings.PostViewMode postViewMode);
 
+    /**
+     * Update only the highlighted and selected state of the bound post.
+     */
+    void setHighlighted(boolean highlighted, boolean selected);
+
     Post getPost();
 
     ThumbnailView getThumbnailView();
@@ -162,6 +162,10 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
         bindPost(theme, post);
     }
 
+    @Override
+    public void setHighlighted(boolean highlighted, boolean selected) {
+    }
+
     public Post getPost() {
         return post;
     }
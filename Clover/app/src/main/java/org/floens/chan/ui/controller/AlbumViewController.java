@@ -24,8 +24,10 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import org.floens.chan.Chan;
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
+import org.floens.chan.core.cache.MediaPrefetcher;
 import org.floens.chan.core.model.Loadable;
 import org.floens.chan.core.model.PostImage;
 import org.floens.chan.ui.cell.AlbumViewCell;
@@ -43,6 +45,8 @@ import static org.floens.chan.utils.AndroidUtils.dp;
 
 public class AlbumViewController extends Controller implements ImageViewerController.ImageViewerCallback, ImageViewerController.GoPostCallback, ToolbarMenuItem.ToolbarMenuItemCallback {
     private static final int SAVE_ALBUM_ID = 101;
+    // Rows of thumbnails below the screen to put in the cache
+    private static final int THUMBNAIL_PREFETCH_ROWS = 3;
 
     private GridRecyclerView recyclerView;
     private GridLayoutManager gridLayoutManager;
@@ -52,6 +56,7 @@ public class AlbumViewController extends Controller implements ImageViewerContro
 
     private AlbumAdapter albumAdapter;
     private Loadable loadable;
+    private MediaPrefetcher prefetcher;
 
     public AlbumViewController(Context context) {
         super(context);
@@ -78,6 +83,21 @@ public class AlbumViewController extends Controller implements ImageViewerContro
         albumAdapter = new AlbumAdapter();
         recyclerView.setAdapter(albumAdapter);
         recyclerView.scrollToPosition(targetIndex);
+
+        prefetcher = new MediaPrefetcher(Chan.getFileCache(), Chan.getVolleyRequestQueue(), 0);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                prefetchThumbnails();
+            }
+        });
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        prefetcher.cancel();
     }
 
     public void setImages(Loadable loadable, List<PostImage> postImages, int index, String title) {
@@ -155,6 +175,18 @@ public class AlbumViewController extends Controller implements ImageViewerContro
         }
     }
 
+    private void prefetchThumbnails() {
+        int last = gridLayoutManager.findLastVisibleItemPosition();
+        if (last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int end = Math.min(postImages.size(), last + 1 + gridLayoutManager.getSpanCount() * THUMBNAIL_PREFETCH_ROWS);
+        if (last + 1 < end) {
+            prefetcher.prefetchThumbnails(postImages.subList(last + 1, end));
+        }
+    }
+
     private void openImage(AlbumItemCellHolder albumItemCellHolder, PostImage postImage) {
         // Just ignore the showImages request when the image is not loaded
         if (albumItemCellHolder.thumbnailView.getBitmap() != null) {
@@ -23,19 +23,30 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import org.floens.chan.Chan;
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
 import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.metrics.Metrics;
 import org.floens.chan.core.model.SavedReply;
-
+import org.floens.chan.core.net.ParseScheduler;
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.ui.activity.StartActivity;
+import org.floens.chan.ui.text.FastTextView;
+import org.floens.chan.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 
 import static org.floens.chan.utils.AndroidUtils.dp;
 import static org.floens.chan.utils.AndroidUtils.getAttrColor;
 
 public class DeveloperSettingsController extends Controller {
+    private static final String TAG = "DeveloperSettingsController";
+
     private TextView summaryText;
 
     private DatabaseManager databaseManager;
@@ -73,6 +84,48 @@ public class DeveloperSettingsController extends Controller {
 
         setDbSummary();
 
+        Button overlayButton = new Button(context);
+        overlayButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                boolean show = !ChanSettings.developerPerformanceOverlay.get();
+                ChanSettings.developerPerformanceOverlay.set(show);
+                ((StartActivity) context).setPerformanceOverlay(show);
+            }
+        });
+        overlayButton.setText("Toggle performance overlay");
+        wrapper.addView(overlayButton);
+
+        Button exportMetricsButton = new Button(context);
+        exportMetricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                File dir = context.getExternalFilesDir(null) != null ? context.getExternalFilesDir(null) : context.getFilesDir();
+                File file = new File(dir, "metrics-" + System.currentTimeMillis() + ".tsv");
+                try {
+                    Metrics.exportSnapshot(file);
+                    Toast.makeText(context, "Exported to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    Logger.e(TAG, "Error exporting metrics", e);
+                    Toast.makeText(context, "Error exporting metrics", Toast.LENGTH_SHORT).show();
+                }
+                setDbSummary();
+            }
+        });
+        exportMetricsButton.setText("Export metrics");
+        wrapper.addView(exportMetricsButton);
+
+        Button resetMetricsButton = new Button(context);
+        resetMetricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Metrics.reset();
+                setDbSummary();
+            }
+        });
+        resetMetricsButton.setText("Reset metrics");
+        wrapper.addView(resetMetricsButton);
+
         Button resetDbButton = new Button(context);
         resetDbButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -112,6 +165,18 @@ public class DeveloperSettingsController extends Controller {
         String dbSummary = "";
         dbSummary += "Database summary:\n";
         dbSummary += Chan.getDatabaseManager().getSummary();
+        dbSummary += "\nParse scheduler summary:\n";
+        dbSummary += ParseScheduler.getInstance().getSummary();
+        dbSummary += "\nBitmap pool summary:\n";
+        dbSummary += Chan.getBitmapPool().getSummary();
+        dbSummary += "\nHttp client summary:\n";
+        dbSummary += Chan.getHttpClient().getSummary();
+        dbSummary += "\nImage decode summary:\n";
+        dbSummary += Chan.getImageDecodeExecutor().getSummary();
+        dbSummary += "\nText layout cache summary:\n";
+        dbSummary += FastTextView.getSummary();
+        dbSummary += "\nMetrics:\n";
+        dbSummary += Metrics.getSummary();
         summaryText.setText(dbSummary);
     }
 }
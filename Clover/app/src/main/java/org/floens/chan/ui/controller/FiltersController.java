@@ -30,10 +30,8 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import org.floens.chan.Chan;
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
-import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.manager.FilterType;
 import org.floens.chan.core.model.Filter;
@@ -58,7 +56,6 @@ public class FiltersController extends Controller implements ToolbarMenuItem.Too
     private static final int CLEAR_ID = 101;
 
     private FilterEngine filterEngine;
-    private DatabaseManager databaseManager;
     private RecyclerView recyclerView;
     private FloatingActionButton add;
     private FilterAdapter adapter;
@@ -102,7 +99,6 @@ public class FiltersController extends Controller implements ToolbarMenuItem.Too
         super.onCreate();
 
         filterEngine = FilterEngine.getInstance();
-        databaseManager = Chan.getDatabaseManager();
 
         navigationItem.setTitle(R.string.filters_screen);
         navigationItem.menu = new ToolbarMenu(context);
@@ -238,7 +234,7 @@ public class FiltersController extends Controller implements ToolbarMenuItem.Too
 
         private void load() {
             sourceList.clear();
-            sourceList.addAll(databaseManager.runTaskSync(databaseManager.getDatabaseFilterManager().getFilters()));
+            sourceList.addAll(filterEngine.getAllFilters());
 
             filter();
         }
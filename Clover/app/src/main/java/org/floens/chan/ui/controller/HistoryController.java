@@ -167,7 +167,7 @@ public class HistoryController extends Controller implements CompoundButton.OnCh
     }
 
     private void deleteHistory(History history) {
-        databaseManager.runTaskSync(databaseHistoryManager.removeHistory(history));
+        databaseManager.runWrite(null, databaseHistoryManager.removeHistory(history));
         adapter.load();
     }
 
@@ -183,12 +183,24 @@ public class HistoryController extends Controller implements CompoundButton.OnCh
         adapter.search(entered);
     }
 
+    /**
+     * Loads the history a page at a time, the next page is loaded when a history near the end is bound. Searching loads
+     * all pages.
+     */
     private class HistoryAdapter extends RecyclerView.Adapter<HistoryCell> implements DatabaseManager.TaskResult<List<History>> {
+        private static final int PAGE_SIZE = 30;
+        // Load the next page when a history this close to the end is bound
+        private static final int PAGE_PREFETCH = 10;
+
         private List<History> sourceList = new ArrayList<>();
         private List<History> displayList = new ArrayList<>();
         private String searchQuery;
 
         private boolean resultPending = false;
+        private boolean reloadPending = false;
+        private boolean endReached = false;
+        private int pendingOffset;
+        private int pendingLimit;
 
         public HistoryAdapter() {
             setHasStableIds(true);
@@ -211,6 +223,10 @@ public class HistoryController extends Controller implements CompoundButton.OnCh
             holder.text.setText(history.loadable.title);
             Board board = boardManager.getBoardByCode(history.loadable.board);
             holder.subtext.setText(board == null ? null : ("/" + board.code + "/ \u2013 " + board.name));
+
+            if (position >= displayList.size() - PAGE_PREFETCH) {
+                loadNextPage();
+            }
         }
 
         @Override
@@ -226,22 +242,56 @@ public class HistoryController extends Controller implements CompoundButton.OnCh
         public void search(String query) {
             this.searchQuery = query;
             filter();
+            if (!TextUtils.isEmpty(query)) {
+                loadNextPage();
+            }
         }
 
+        /**
+         * Reload the history from the start, as many histories as were already loaded.
+         */
         private void load() {
-            if (!resultPending) {
-                resultPending = true;
-                databaseManager.runTask(databaseHistoryManager.getHistory(), this);
+            if (resultPending) {
+                reloadPending = true;
+            } else {
+                request(0, Math.max(PAGE_SIZE, sourceList.size()));
+            }
+        }
+
+        private void loadNextPage() {
+            if (!resultPending && !endReached) {
+                request(sourceList.size(), PAGE_SIZE);
             }
         }
 
+        private void request(int offset, int limit) {
+            resultPending = true;
+            pendingOffset = offset;
+            pendingLimit = limit;
+            databaseManager.runTask(databaseHistoryManager.getHistory(offset, limit), this);
+        }
+
         @Override
         public void onComplete(List<History> result) {
             resultPending = false;
-            sourceList.clear();
+            if (reloadPending) {
+                reloadPending = false;
+                load();
+                return;
+            }
+
+            if (pendingOffset == 0) {
+                sourceList.clear();
+            }
             sourceList.addAll(result);
+            endReached = result.size() < pendingLimit;
             crossfade.toggle(!sourceList.isEmpty(), true);
             filter();
+
+            // The search goes through all history
+            if (!TextUtils.isEmpty(searchQuery)) {
+                loadNextPage();
+            }
         }
 
         private void filter() {
@@ -89,7 +89,8 @@ public class PostHelper {
     private static SimpleDateFormat dateFormat = new SimpleDateFormat("LL/dd/yy(EEE)kk:mm:ss", Locale.US);
     private static Date tmpDate = new Date();
 
-    public static String getLocalDate(Post post) {
+    // Threadsafe, the post cell data is built in the background
+    public static synchronized String getLocalDate(Post post) {
         tmpDate.setTime(post.time * 1000L);
         return dateFormat.format(tmpDate);
     }
@@ -60,6 +60,8 @@ import static org.floens.chan.utils.AndroidUtils.getDimen;
  */
 public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLayoutCallback {
     public static final int MAX_SMOOTH_SCROLL_DISTANCE = 20;
+    // Posts past the edge of the screen to build the title layouts of while scrolling
+    private static final int LAYOUT_PREFETCH_COUNT = 8;
 
     private ReplyLayout reply;
     private TextView searchStatus;
@@ -117,6 +119,12 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
                         lastPostCount = last;
                         ThreadListLayout.this.callback.onListScrolledToBottom();
                     }
+
+                    if (dy > 0 && last >= 0) {
+                        postAdapter.prefetchLayouts(last + 1, LAYOUT_PREFETCH_COUNT);
+                    } else if (dy < 0) {
+                        postAdapter.prefetchLayouts(indexTop[0] - 1, -LAYOUT_PREFETCH_COUNT);
+                    }
                 }
             }
         });
@@ -32,17 +32,45 @@ import android.view.MotionEvent;
 import android.view.View;
 
 import org.floens.chan.R;
+import org.floens.chan.core.metrics.Metrics;
 import org.floens.chan.utils.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.floens.chan.utils.AndroidUtils.sp;
 
 /**
  * A simple implementation of a TextView that caches the used StaticLayouts for performance.<br>
- * This view was made for {@link org.floens.chan.ui.cell.PostCell} and {@link org.floens.chan.ui.cell.CardPostCell} and may have untested behaviour with other layouts.
+ * This view was made for {@link org.floens.chan.ui.cell.PostCell} and {@link org.floens.chan.ui.cell.CardPostCell} and may have untested behaviour with other layouts.<br>
+ * Layouts for texts that are about to be shown can be built ahead on a background thread with
+ * {@link #prefetchLayouts(List, List)}, using the {@link LayoutSpec} of a view that showed a similar text.
  */
 public class FastTextView extends View {
     private static final String TAG = "FastTextView";
-    private static LruCache<FastTextViewItem, StaticLayout> textCache = new LruCache<>(250);
+    // Estimated size of all cached layouts and their texts
+    private static final int CACHE_SIZE = 1024 * 1024;
+
+    private static final LruCache<FastTextViewItem, StaticLayout> textCache = new LruCache<FastTextViewItem, StaticLayout>(CACHE_SIZE) {
+        @Override
+        protected int sizeOf(FastTextViewItem key, StaticLayout value) {
+            return estimateSize(key.text, value);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, FastTextViewItem key, StaticLayout oldValue, StaticLayout newValue) {
+            if (evicted) {
+                Metrics.TEXT_LAYOUT_EVICT.increment();
+            }
+        }
+    };
+
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+    private static final Object prefetchLock = new Object();
+    // Only the last requested prefetch is done, the ones before it are replaced
+    private static List<FastTextViewItem> pendingPrefetch;
 
     private TextPaint paint;
     private boolean singleLine;
@@ -51,6 +79,7 @@ public class FastTextView extends View {
 
     private boolean update = false;
     private StaticLayout layout;
+    private int layoutWidth;
     private int width;
     private FastTextViewMovementMethod movementMethod;
 
@@ -124,6 +153,87 @@ public class FastTextView extends View {
         return layout;
     }
 
+    /**
+     * @return the paint and width of the current layout, or null when there is no layout
+     */
+    public LayoutSpec getLayoutSpec() {
+        if (layout == null) {
+            return null;
+        }
+        return new LayoutSpec(paint.getColor(), paint.getTextSize(), layoutWidth);
+    }
+
+    /**
+     * Build the layouts of the texts on a background thread and put them in the shared cache, so that a view
+     * showing the text with the same spec doesn't build it on the UI thread. Replaces the previous prefetch if
+     * it didn't finish yet.
+     *
+     * @param texts texts to build the layouts for
+     * @param specs spec for each text
+     */
+    public static void prefetchLayouts(List<CharSequence> texts, List<LayoutSpec> specs) {
+        List<FastTextViewItem> items = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            CharSequence text = texts.get(i);
+            if (!TextUtils.isEmpty(text)) {
+                LayoutSpec spec = specs.get(i);
+                items.add(new FastTextViewItem(text, spec.color, spec.textSize, spec.layoutWidth));
+            }
+        }
+
+        boolean schedule;
+        synchronized (prefetchLock) {
+            schedule = pendingPrefetch == null;
+            pendingPrefetch = items;
+        }
+
+        if (schedule) {
+            prefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<FastTextViewItem> items;
+                    synchronized (prefetchLock) {
+                        items = pendingPrefetch;
+                        pendingPrefetch = null;
+                    }
+
+                    TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+                    for (int i = 0; i < items.size(); i++) {
+                        FastTextViewItem item = items.get(i);
+                        // The hit and miss counters are only counted for the views
+                        if (textCache.get(item) != null) {
+                            continue;
+                        }
+
+                        paint.setColor(item.color);
+                        paint.setTextSize(item.textSize);
+                        textCache.put(item, new StaticLayout(item.text, paint, item.layoutWidth, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false));
+                        Metrics.TEXT_LAYOUT_PREFETCH.increment();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Size of the layout cache, for the developer screen. The hits and misses are in {@link Metrics}.
+     *
+     * @return the size
+     */
+    public static String getSummary() {
+        return "Size: " + (textCache.size() / 1024) + "/" + (textCache.maxSize() / 1024) + "KB, " +
+                textCache.snapshot().size() + " layouts\n";
+    }
+
+    // The layout keeps an array of ints per line, and the cache keeps the text alive
+    private static int estimateSize(CharSequence text, StaticLayout layout) {
+        int size = 128 + text.length() * 2 + layout.getLineCount() * 32;
+        if (text instanceof Spanned) {
+            size += ((Spanned) text).getSpans(0, text.length(), Object.class).length * 32;
+        }
+        return size;
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         boolean handled = false;
@@ -215,18 +325,20 @@ public class FastTextView extends View {
 //                    long start = Time.startTiming();
 
                     // The StaticLayouts are cached with the static textCache LRU map
-                    FastTextViewItem item = new FastTextViewItem(text, paint, layoutWidth);
+                    FastTextViewItem item = new FastTextViewItem(text, paint.getColor(), paint.getTextSize(), layoutWidth);
 
                     StaticLayout cached = textCache.get(item);
                     if (cached == null) {
 //                        Logger.test("staticlayout cache miss: text = %s", text);
+                        Metrics.TEXT_LAYOUT_MISS.increment();
                         cached = getStaticLayout(layoutWidth);
                         textCache.put(item, cached);
-                    }/* else {
-                        Logger.test("staticlayout cache hit");
-                    }*/
+                    } else {
+                        Metrics.TEXT_LAYOUT_HIT.increment();
+                    }
 
                     layout = cached;
+                    this.layoutWidth = layoutWidth;
 //                    Time.endTiming(Integer.toHexString(System.identityHashCode(this)) + " staticlayout for width = " + layoutWidth + "\t", start);
                 } else {
                     layout = null;
@@ -243,16 +355,31 @@ public class FastTextView extends View {
         return new StaticLayout(text, paint, layoutWidth, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
     }
 
+    /**
+     * The paint and width a layout was built with.
+     */
+    public static class LayoutSpec {
+        private final int color;
+        private final float textSize;
+        private final int layoutWidth;
+
+        public LayoutSpec(int color, float textSize, int layoutWidth) {
+            this.color = color;
+            this.textSize = textSize;
+            this.layoutWidth = layoutWidth;
+        }
+    }
+
     private static class FastTextViewItem {
         private CharSequence text;
         private int color;
         private float textSize;
         private int layoutWidth;
 
-        public FastTextViewItem(CharSequence text, TextPaint textPaint, int layoutWidth) {
+        public FastTextViewItem(CharSequence text, int color, float textSize, int layoutWidth) {
             this.text = text;
-            color = textPaint.getColor();
-            textSize = textPaint.getTextSize();
+            this.color = color;
+            this.textSize = textSize;
             this.layoutWidth = layoutWidth;
         }
 
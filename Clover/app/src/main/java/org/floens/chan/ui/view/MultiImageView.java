@@ -40,6 +40,7 @@ import org.floens.chan.Chan;
 import org.floens.chan.R;
 import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.net.BitmapLruImageCache;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
@@ -66,9 +67,14 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
 
     private boolean hasContent = false;
     private ImageContainer thumbnailRequest;
+    // The thumbnail is from the image cache, keep it from being pooled while shown
+    private final BitmapLruImageCache.Holder thumbnailHolder = new BitmapLruImageCache.Holder(Chan.getImageCache());
     private FileCache.FileCacheDownloader bigImageRequest;
+    private FileCache.DownloadedCallback bigImageCallback;
     private FileCache.FileCacheDownloader gifRequest;
+    private FileCache.DownloadedCallback gifCallback;
     private FileCache.FileCacheDownloader videoRequest;
+    private FileCache.DownloadedCallback videoCallback;
 
     private VideoView videoView;
     private boolean videoError = false;
@@ -163,6 +169,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         cancelLoad();
+        thumbnailHolder.clear();
     }
 
     private void setThumbnail(String thumbnailUrl) {
@@ -189,6 +196,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
                 if (response.getBitmap() != null && (!hasContent || mode == Mode.LOWRES)) {
                     ImageView thumbnail = new ImageView(getContext());
                     thumbnail.setImageBitmap(response.getBitmap());
+                    thumbnailHolder.set(response.getBitmap());
 
                     onModeLoaded(Mode.LOWRES, thumbnail);
                 }
@@ -214,7 +222,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
         }
 
         callback.showProgress(this, true);
-        bigImageRequest = Chan.getFileCache().downloadFile(imageUrl, new FileCache.DownloadedCallback() {
+        bigImageCallback = new FileCache.DownloadedCallback() {
             @Override
             public void onProgress(long downloaded, long total, boolean done) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -238,7 +246,8 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
                     onError();
                 }
             }
-        });
+        };
+        bigImageRequest = Chan.getFileCache().downloadFile(imageUrl, bigImageCallback);
     }
 
     private void setBigImageFile(File file) {
@@ -256,7 +265,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
         }
 
         callback.showProgress(this, true);
-        gifRequest = Chan.getFileCache().downloadFile(gifUrl, new FileCache.DownloadedCallback() {
+        gifCallback = new FileCache.DownloadedCallback() {
             @Override
             public void onProgress(long downloaded, long total, boolean done) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -282,7 +291,8 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
                     onError();
                 }
             }
-        });
+        };
+        gifRequest = Chan.getFileCache().downloadFile(gifUrl, gifCallback);
     }
 
     private void setGifFile(File file) {
@@ -320,7 +330,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
         }
 
         callback.showProgress(this, true);
-        videoRequest = Chan.getFileCache().downloadFile(videoUrl, new FileCache.DownloadedCallback() {
+        videoCallback = new FileCache.DownloadedCallback() {
             @Override
             public void onProgress(long downloaded, long total, boolean done) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -346,7 +356,8 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
                     onError();
                 }
             }
-        });
+        };
+        videoRequest = Chan.getFileCache().downloadFile(videoUrl, videoCallback);
     }
 
     private void setVideoFile(final File file) {
@@ -448,16 +459,17 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
             thumbnailRequest.cancelRequest();
             thumbnailRequest = null;
         }
+        // Only removes our callback, a prefetch of the same file can continue
         if (bigImageRequest != null) {
-            bigImageRequest.cancel();
+            bigImageRequest.cancel(bigImageCallback);
             bigImageRequest = null;
         }
         if (gifRequest != null) {
-            gifRequest.cancel();
+            gifRequest.cancel(gifCallback);
             gifRequest = null;
         }
         if (videoRequest != null) {
-            videoRequest.cancel();
+            videoRequest.cancel(videoCallback);
             videoRequest = null;
         }
     }
@@ -485,6 +497,11 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
             if (!alreadyAttached) {
                 addView(view, 0, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
             }
+
+            if (mode != Mode.LOWRES) {
+                // The thumbnail was removed
+                thumbnailHolder.clear();
+            }
         }
 
         hasContent = true;
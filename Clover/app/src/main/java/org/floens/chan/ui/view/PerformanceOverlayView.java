@@ -0,0 +1,78 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.ui.view;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import org.floens.chan.core.metrics.Metrics;
+
+import static org.floens.chan.utils.AndroidUtils.dp;
+
+/**
+ * Shows the {@link Metrics} summary on top of the app, updated every second while attached.
+ * Doesn't take touches, the views below it keep working.
+ */
+public class PerformanceOverlayView extends TextView {
+    private static final long UPDATE_INTERVAL = 1000;
+
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            setText(Metrics.getSummary());
+            postDelayed(this, UPDATE_INTERVAL);
+        }
+    };
+
+    public PerformanceOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public PerformanceOverlayView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PerformanceOverlayView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 9);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0xaa000000);
+        setPadding(dp(4), dp(4), dp(4), dp(4));
+        setClickable(false);
+        setFocusable(false);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        removeCallbacks(updateRunnable);
+        updateRunnable.run();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(updateRunnable);
+    }
+}
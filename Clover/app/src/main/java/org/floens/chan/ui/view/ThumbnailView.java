@@ -309,8 +309,13 @@ public class ThumbnailView extends View implements ImageLoader.ImageListener {
         bitmapShader = null;
         paint.setShader(null);
 
+        // Let the cache know which bitmaps are shown, so that they aren't reused for other images
+        if (this.bitmap != null) {
+            Chan.getImageCache().release(this.bitmap);
+        }
         this.bitmap = bitmap;
         if (bitmap != null) {
+            Chan.getImageCache().acquire(bitmap);
             calculate = true;
             bitmapShader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
         }
@@ -28,10 +28,15 @@ import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
 
+import org.floens.chan.Chan;
+import org.floens.chan.core.net.BitmapLruImageCache;
+
 public class TransitionImageView extends View {
     private static final String TAG = "TransitionImageView";
 
     private Bitmap bitmap;
+    // The bitmap is from the image cache, keep it from being pooled while shown
+    private final BitmapLruImageCache.Holder bitmapHolder = new BitmapLruImageCache.Holder(Chan.getImageCache());
     private Matrix matrix = new Matrix();
     private Paint paint = new Paint();
     private RectF bitmapRect = new RectF();
@@ -60,8 +65,21 @@ public class TransitionImageView extends View {
         init();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        bitmapHolder.set(bitmap);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        bitmapHolder.clear();
+    }
+
     public void setBitmap(Bitmap bitmap) {
         this.bitmap = bitmap;
+        bitmapHolder.set(bitmap);
         bitmapRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
 
         // Center inside method
@@ -86,6 +104,7 @@ public class TransitionImageView extends View {
 
     public void setSourceImageView(Point windowLocation, Point viewSize, Bitmap bitmap) {
         this.bitmap = bitmap;
+        bitmapHolder.set(bitmap);
         bitmapRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
 
         if (stateBitmapSize != null) {
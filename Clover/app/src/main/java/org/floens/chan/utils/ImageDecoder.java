@@ -20,18 +20,17 @@ package org.floens.chan.utils;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
-import java.io.ByteArrayOutputStream;
+import org.floens.chan.Chan;
+import org.floens.chan.core.net.BucketedBitmapPool;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 
 /**
  * Simple ImageDecoder. Taken from Volley ImageRequest.
  */
 public class ImageDecoder {
     public static void decodeFileOnBackgroundThread(final File file, final int maxWidth, final int maxHeight, final ImageDecoderCallback callback) {
-        Thread thread = new Thread(new Runnable() {
+        Chan.getImageDecodeExecutor().execute(new Runnable() {
             @Override
             public void run() {
                 final Bitmap bitmap = decodeFile(file, maxWidth, maxHeight);
@@ -44,50 +43,49 @@ public class ImageDecoder {
                 });
             }
         });
-        thread.start();
     }
 
     public interface ImageDecoderCallback {
         void onImageBitmap(File file, Bitmap bitmap);
     }
 
+    /**
+     * Decode straight from the file, without reading it into memory first.
+     */
     public static Bitmap decodeFile(File file, int maxWidth, int maxHeight) {
         if (!file.exists())
             return null;
 
-        FileInputStream fis;
-
+        final String path = file.getAbsolutePath();
         try {
-            fis = new FileInputStream(file);
-        } catch (FileNotFoundException e) {
+            return decode(new Source() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeFile(path, options);
+                }
+            }, maxWidth, maxHeight);
+        } catch (OutOfMemoryError e) {
             e.printStackTrace();
             return null;
         }
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        Bitmap bitmap = null;
-
-        try {
-            IOUtils.copy(fis, baos);
-            bitmap = decode(baos.toByteArray(), maxWidth, maxHeight);
-        } catch (IOException | OutOfMemoryError e) {
-            e.printStackTrace();
-        } finally {
-            IOUtils.closeQuietly(fis);
-            IOUtils.closeQuietly(baos);
-        }
-
-        return bitmap;
+    public static Bitmap decode(final byte[] data, int maxWidth, int maxHeight) {
+        return decode(new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        }, maxWidth, maxHeight);
     }
 
-    public static Bitmap decode(byte[] data, int maxWidth, int maxHeight) {
+    private static Bitmap decode(Source source, int maxWidth, int maxHeight) {
         BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
         Bitmap bitmap;
 
         // If we have to resize this image, first get the natural bounds.
         decodeOptions.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+        source.decode(decodeOptions);
         int actualWidth = decodeOptions.outWidth;
         int actualHeight = decodeOptions.outHeight;
 
@@ -100,12 +98,14 @@ public class ImageDecoder {
 
         // decodeOptions.inPreferQualityOverSpeed = PREFER_QUALITY_OVER_SPEED;
         decodeOptions.inSampleSize = findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-        Bitmap tempBitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+        BucketedBitmapPool pool = Chan.getBitmapPool();
+        Bitmap tempBitmap = decodeWithPool(pool, source, decodeOptions, actualWidth, actualHeight);
 
         // If necessary, scale down to the maximal acceptable size.
         if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth || tempBitmap.getHeight() > desiredHeight)) {
             bitmap = Bitmap.createScaledBitmap(tempBitmap, desiredWidth, desiredHeight, true);
-            tempBitmap.recycle();
+            // Only used for scaling, can be reused
+            pool.put(tempBitmap);
         } else {
             bitmap = tempBitmap;
         }
@@ -113,6 +113,32 @@ public class ImageDecoder {
         return bitmap;
     }
 
+    /**
+     * Same as ImageRequest.decodeWithPool.
+     */
+    private static Bitmap decodeWithPool(BucketedBitmapPool pool, Source source, BitmapFactory.Options decodeOptions, int actualWidth, int actualHeight) {
+        int sampleSize = Math.max(1, decodeOptions.inSampleSize);
+        int width = (actualWidth + sampleSize - 1) / sampleSize;
+        int height = (actualHeight + sampleSize - 1) / sampleSize;
+
+        decodeOptions.inMutable = true;
+        decodeOptions.inBitmap = pool.get(width, height, decodeOptions.inPreferredConfig);
+        if (decodeOptions.inBitmap != null) {
+            try {
+                return source.decode(decodeOptions);
+            } catch (IllegalArgumentException e) {
+                pool.onReuseFailed(decodeOptions.inBitmap);
+                decodeOptions.inBitmap = null;
+            }
+        }
+        return source.decode(decodeOptions);
+    }
+
+    // A file or data to decode from, can be decoded more than once
+    private interface Source {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
     private static int getResizedDimension(int maxPrimary, int maxSecondary, int actualPrimary, int actualSecondary) {
         // If no dominant value at all, just return the actual.
         if (maxPrimary == 0 && maxSecondary == 0) {
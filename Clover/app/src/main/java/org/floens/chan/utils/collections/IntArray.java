@@ -0,0 +1,108 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, without boxing.<br>
+ * Not threadsafe.
+ */
+public class IntArray {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] values;
+    private int size;
+
+    public IntArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArray(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(int[] values, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, this.values, size, length);
+        size += length;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        values[index] = value;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all values, the capacity is kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+}
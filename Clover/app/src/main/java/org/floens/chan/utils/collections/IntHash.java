@@ -0,0 +1,54 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.utils.collections;
+
+/**
+ * Hashing and sizing shared by the open addressing tables.
+ */
+class IntHash {
+    // Tables are resized when they are more than 3/4 full
+    private static final int LOAD_FACTOR_NUMERATOR = 3;
+    private static final int LOAD_FACTOR_DENOMINATOR = 4;
+
+    private IntHash() {
+    }
+
+    /**
+     * Post numbers are sequential, spread them over the table with a multiplicative hash.
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return a power of two table size that holds the number of keys without resizing
+     */
+    static int tableSize(int keys) {
+        int needed = keys * LOAD_FACTOR_DENOMINATOR / LOAD_FACTOR_NUMERATOR + 1;
+        int size = 2;
+        while (size < needed) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    static int maxSize(int tableSize) {
+        return tableSize * LOAD_FACTOR_NUMERATOR / LOAD_FACTOR_DENOMINATOR;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Map from int keys to objects, without boxing the keys. Open addressing with linear probing, a slot is empty
+ * when its value is null, so null values are not allowed.<br>
+ * Not threadsafe.
+ */
+public class IntObjectMap<V> {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectMap(int capacity) {
+        int tableSize = IntHash.tableSize(Math.max(capacity, 1));
+        keys = new int[tableSize];
+        values = new Object[tableSize];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        int slot = IntHash.hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+
+        int mask = keys.length - 1;
+        int slot = IntHash.hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        if (size > IntHash.maxSize(keys.length)) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int slot = IntHash.hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V removed = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries, the capacity is kept.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    // Close the gap at the slot, moving back the entries after it that would not be found anymore
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+
+            int home = IntHash.hash(keys[slot]) & mask;
+            // Move the entry when its home slot is not between the gap and its slot, cyclically
+            if (gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void rehash(int tableSize) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[tableSize];
+        values = new Object[tableSize];
+        int mask = tableSize - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = IntHash.hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
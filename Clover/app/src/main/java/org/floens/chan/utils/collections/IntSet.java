@@ -0,0 +1,136 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints, without boxing. The values are kept in insertion order, so they can be iterated with
+ * {@link #get(int)} without allocating. The hash table is open addressing with linear probing and stores
+ * the position of the value in the insertion order.<br>
+ * Values can't be removed one by one, only cleared. Not threadsafe.
+ */
+public class IntSet {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] values;
+    private int size;
+    // Position in values + 1, 0 is an empty slot. The length is a power of two.
+    private int[] table;
+
+    public IntSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntSet(int capacity) {
+        capacity = Math.max(capacity, 1);
+        values = new int[capacity];
+        table = new int[IntHash.tableSize(capacity)];
+    }
+
+    /**
+     * @return true if the value was not in the set before
+     */
+    public boolean add(int value) {
+        int mask = table.length - 1;
+        int slot = IntHash.hash(value) & mask;
+        while (table[slot] != 0) {
+            if (values[table[slot] - 1] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+        table[slot] = size;
+
+        if (size > IntHash.maxSize(table.length)) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public void addAll(IntSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    public boolean contains(int value) {
+        int mask = table.length - 1;
+        int slot = IntHash.hash(value) & mask;
+        while (table[slot] != 0) {
+            if (values[table[slot] - 1] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param index position in the insertion order
+     * @return the value
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all values, the capacity is kept.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * @return the values in insertion order
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = IntHash.hash(values[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+}